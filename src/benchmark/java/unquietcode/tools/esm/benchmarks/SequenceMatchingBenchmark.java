@@ -0,0 +1,140 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import unquietcode.tools.esm.EnumStateMachine;
+import unquietcode.tools.esm.HandlerRegistration;
+import unquietcode.tools.esm.sequences.Pattern;
+import unquietcode.tools.esm.sequences.PatternBuilder;
+import unquietcode.tools.esm.sequences.SequenceHandler;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of sequence matching as the number of registered
+ * patterns grows. Run with the 'benchmarks' profile:
+ *
+ * <pre>
+ *   mvn -P benchmarks test-compile exec:exec -Dbenchmark.filter=SequenceMatching
+ * </pre>
+ *
+ * The gc profiler is enabled by default, so the 'gc.alloc.rate.norm'
+ * column reports the bytes allocated per transition.
+ *
+ * @version 10-18-2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceMatchingBenchmark {
+	private static final int WALK_LENGTH = 1024;
+
+	@Param({"1", "10", "100", "1000", "10000"})
+	public int patterns;
+
+	@Param({"2", "8"})
+	public int maxLength;
+
+	@Param({"false", "true"})
+	public boolean wildcards;
+
+	private EnumStateMachine<Step> machine;
+	private Step[] walk;
+	private int position;
+	private long matches;
+
+	private Pattern<Step> extraPattern;
+	private SequenceHandler<Step> extraHandler;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final Random random = new Random(42);
+		final Step[] steps = Step.values();
+
+		machine = new EnumStateMachine<>(Step.S0);
+		machine.addAll(Step.class, true);
+
+		for (int i=0; i < patterns; ++i) {
+			machine.onSequence(randomPattern(random, steps), pattern -> matches++);
+		}
+
+		walk = new Step[WALK_LENGTH];
+
+		for (int i=0; i < WALK_LENGTH; ++i) {
+			walk[i] = steps[random.nextInt(steps.length)];
+		}
+
+		extraPattern = randomPattern(random, steps);
+		extraHandler = pattern -> matches++;
+	}
+
+	private Pattern<Step> randomPattern(Random random, Step[] steps) {
+		PatternBuilder<Step> builder = PatternBuilder.create();
+		int length = 1 + random.nextInt(maxLength);
+
+		for (int j=0; j < length; ++j) {
+
+			// never start with a wildcard, so that every pattern is anchored
+			if (wildcards && j > 0 && random.nextInt(4) == 0) {
+				builder.addWildcard();
+			} else {
+				builder.add(steps[random.nextInt(steps.length)]);
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * One transition, with every registered pattern checked
+	 * against the recent states.
+	 */
+	@Benchmark
+	public boolean transition() {
+		Step next = walk[position];
+		position = (position + 1) % WALK_LENGTH;
+
+		return machine.transition(next);
+	}
+
+	/**
+	 * Registering and then removing a single pattern, which
+	 * recalculates the size of the recent state window.
+	 */
+	@Benchmark
+	public void registerAndUnregister() {
+		HandlerRegistration registration = machine.onSequence(extraPattern, extraHandler);
+		registration.unregister();
+	}
+
+	public enum Step implements unquietcode.tools.esm.State {
+		S0, S1, S2, S3, S4, S5, S6, S7,
+		S8, S9, S10, S11, S12, S13, S14, S15
+	}
+}
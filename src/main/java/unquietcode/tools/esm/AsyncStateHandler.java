@@ -0,0 +1,55 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link StateHandler} which performs its work asynchronously. The
+ * transition continues once the returned stage has completed, without
+ * holding on to the state machine's worker thread in the meantime.
+ * If the stage completes exceptionally then the transition fails.
+ *
+ * The state machine is not considered to have left its current state
+ * until every handler of the transition has completed, so that reads
+ * of the current state are not blocked by a slow handler.
+ *
+ * @version 10-18-2026
+ */
+@FunctionalInterface
+public interface AsyncStateHandler<T> extends StateHandler<T> {
+
+	/**
+	 * Handle the state, completing the returned stage when done.
+	 *
+	 * @param state the state being entered or exited
+	 * @return a stage which completes when the handler is finished
+	 */
+	CompletionStage<Void> onStateAsync(T state);
+
+	@Override
+	default void onState(T state) {
+		onStateAsync(state).toCompletableFuture().join();
+	}
+}
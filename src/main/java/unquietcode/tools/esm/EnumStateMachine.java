@@ -24,9 +24,7 @@
 package unquietcode.tools.esm;
 
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 /**
  * A state machine which runs on enums. Note that null is a valid state
@@ -37,6 +35,8 @@ import java.util.List;
  */
 public class EnumStateMachine<T extends Enum<T>> extends WrappedStateMachine<EnumStateMachine.EnumWrapper<T>, T> implements FactoryStateMachine<T> {
 	private Class<T> genericType;
+	private Map<String, T> stateNames;
+	private boolean ignoreCase = false;
 
 	public EnumStateMachine() {
 		super();
@@ -98,13 +98,48 @@ public class EnumStateMachine<T extends Enum<T>> extends WrappedStateMachine<Enu
 			throw new IllegalArgumentException("A valid enum class must be provided.");
 		}
 		this.genericType = clazz;
+		this.stateNames = indexNames(clazz, ignoreCase);
+	}
+
+	/**
+	 * Sets whether names should be resolved by {@link #getState(String)}
+	 * without regard to case. Off by default.
+	 *
+	 * @param ignoreCase true to ignore case when resolving names
+	 * @throws IllegalArgumentException if the enum has names which differ only by case
+	 */
+	public void setIgnoreCase(boolean ignoreCase) {
+		if (genericType != null) {
+			stateNames = indexNames(genericType, ignoreCase);
+		}
+		this.ignoreCase = ignoreCase;
+	}
+
+	private static <T extends Enum<T>> Map<String, T> indexNames(Class<T> clazz, boolean ignoreCase) {
+		Map<String, T> names = new HashMap<>();
+
+		for (T t : clazz.getEnumConstants()) {
+			String name = ignoreCase ? t.name().toLowerCase(Locale.ROOT) : t.name();
+
+			if (names.put(name, t) != null) {
+				throw new IllegalArgumentException("The name '"+t.name()+"' cannot be resolved without regard to case.");
+			}
+		}
+
+		return names;
 	}
 
 	//---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---//
 
 	@Override
+	@SuppressWarnings("unchecked")
 	protected EnumWrapper<T> wrap(T unwrapped) {
-		return new EnumWrapper<>(unwrapped);
+		return (EnumWrapper<T>) WRAPPERS.get(unwrapped.getDeclaringClass())[unwrapped.ordinal()];
+	}
+
+	@Override
+	protected boolean hasCanonicalWrappers() {
+		return true;
 	}
 
 	@Override
@@ -112,6 +147,22 @@ public class EnumStateMachine<T extends Enum<T>> extends WrappedStateMachine<Enu
 		return wrapped.value;
 	}
 
+	// one shared wrapper for every enum constant, indexed by ordinal
+	private static final ClassValue<EnumWrapper<?>[]> WRAPPERS = new ClassValue<EnumWrapper<?>[]>() {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		protected EnumWrapper<?>[] computeValue(Class<?> clazz) {
+			Enum[] constants = (Enum[]) clazz.getEnumConstants();
+			EnumWrapper<?>[] wrappers = new EnumWrapper<?>[constants.length];
+
+			for (Enum constant : constants) {
+				wrappers[constant.ordinal()] = new EnumWrapper(constant);
+			}
+
+			return wrappers;
+		}
+	};
+
 	static class EnumWrapper<T extends Enum<T>> implements State {
 		public final T value;
 
@@ -139,14 +190,12 @@ public class EnumStateMachine<T extends Enum<T>> extends WrappedStateMachine<Enu
 			return null;
 		}
 
-		for (T t : genericType.getEnumConstants()) {
-			String enumName = t.name();
+		T state = stateNames.get(ignoreCase ? name.toLowerCase(Locale.ROOT) : name);
 
-			if (enumName.equals(name)) {
-				return t;
-			}
+		if (state == null) {
+			throw new RuntimeException("unknown name '"+name+"'");
 		}
 
-		throw new RuntimeException("unknown name '"+name+"'");
+		return state;
 	}
 }
\ No newline at end of file
@@ -23,6 +23,9 @@
 
 package unquietcode.tools.esm;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A state machine which can produce a state given it's name. This would
  * generally imply the existence of a one-to-one mapping between strings
@@ -42,6 +45,23 @@ public interface FactoryStateMachine<T> {
 	 */
 	T getState(String name);
 
+	/**
+	 * Given a sequence of names, return the states
+	 * represented by those names, in the same order.
+	 *
+	 * @param names of the states
+	 * @return states for those names
+	 */
+	default List<T> resolveStates(Iterable<String> names) {
+		List<T> states = new ArrayList<>();
+
+		for (String name : names) {
+			states.add(getState(name));
+		}
+
+		return states;
+	}
+
 	/**
 	 * Set the type, which may be required in some cases
 	 * due to Java's type erasure of generic parameters.
@@ -23,18 +23,24 @@
 
 package unquietcode.tools.esm;
 
+import unquietcode.tools.esm.events.EventDrivenStateMachine;
+import unquietcode.tools.esm.routing.PayloadStateRouter;
+import unquietcode.tools.esm.routing.PureStateRouter;
 import unquietcode.tools.esm.routing.StateRouter;
 import unquietcode.tools.esm.sequences.Pattern;
 import unquietcode.tools.esm.sequences.PatternBuilder;
 import unquietcode.tools.esm.sequences.SequenceHandler;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 
@@ -45,39 +51,103 @@ import java.util.function.Supplier;
  * @author  Benjamin Fagin
  * @version 12-23-2010
  */
-public class GenericStateMachine<T extends State> implements StateMachine<T> {
+public class GenericStateMachine<T extends State>
+	implements StateMachine<T>, PayloadStateMachine<T>, PathFindingStateMachine<T>, VariableStateMachine,
+		EventDrivenStateMachine<T>, TimeoutStateMachine<T>, SchedulingStateMachine<T>,
+		HierarchicalStateMachine<T>
+{
+
+	// the state machine whose independent handler is running on the current thread
+	private static final ThreadLocal<GenericStateMachine<?>> INDEPENDENT = new ThreadLocal<>();
 
 	// states, and the routers that route them
-	private ExecutorService executor = _newExecutor();
+	private volatile ExecutorService executor = _newExecutor();
+	private volatile Executor independentExecutor;
 	private final Map<StateWrapper, StateContainer> states = new HashMap<>();
-	private final List<StateRouter<T>> routers = new ArrayList<>();
+	private final Map<State, StateContainer> statesByIdentity = new IdentityHashMap<>();
+	private final List<StateRouter<Object>> routers = new ArrayList<>();
+	private boolean pureRouters = true;
+
+	// the decisions of pure routers are kept by each state, until the routers change
+	private int decided;
+
+	// converts between states and the values which are passed to callbacks
+	private final Function<? super T, ?> toValue;
+	private final Function<Object, ? extends T> fromValue;
 
 	// sequence matching
 	private int maxRecent = 0;
-	private final Queue<StateContainer> recentStates = new ArrayDeque<>();
-	private final Set<PatternMatcher<T>> matchers = new HashSet<>();
+	private final RecentStates recentStates = new RecentStates();
+	private final Handlers matchers = new Handlers();
 
 	// global handlers
-	private final Set<StateHandler<T>> globalOnEntryHandlers = new HashSet<>();
-	private final Set<StateHandler<T>> globalOnExitHandlers = new HashSet<>();
-	private final Set<TransitionHandler<T>> globalOnTransitionHandlers = new HashSet<>();
+	private final Handlers globalOnEntryHandlers = new Handlers();
+	private final Handlers globalOnExitHandlers = new Handlers();
+	private final Handlers globalOnTransitionHandlers = new Handlers();
+
+	// queued transitions, the first of which is in progress
+	private final Queue<TransitionTask> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean draining = new AtomicBoolean(false);
 
 	// locks
 	private final ReentrantLock transitionLock = new ReentrantLock(true);
 	private final ReadWriteLock routingLock = new ReentrantReadWriteLock(true);
 	private final Lock sequenceLock = new ReentrantLock(true);
 
+	// shortest paths between the states, built as needed
+	private Paths paths;
+
+	// substates, and the shape of the transitions between them, which changes
+	// whenever they do and so forgets the exits and entries worked out before
+	private boolean hierarchical = false;
+	private int shape;
+
+	// the id of each event, which indexes the targets of each state
+	private final Map<Object, Integer> events = new ConcurrentHashMap<>();
+
+	// extended state, alongside the current state
+	private final StateVariables variables = new StateVariables();
+
+	// the timeouts of the active states, and the number of states entered so far
+	private List<TimingWheel.Timeout> armed;
+	private volatile long entries;
+
+	// transitions which are waiting for their time to come, and the number
+	// of times the current state has changed, for telling when they are stale
+	private final Set<DelayedTransition> delayed = ConcurrentHashMap.newKeySet();
+	private volatile long changes;
+
 	// backing data
 	private StateContainer initial;
 	private StateContainer current;
 	private long transitions;
 
+	// counts the resets, including those made by changes to the definition,
+	// so that a transition which was waiting on its handlers isn't committed
+	private long generation;
+
 
 	public GenericStateMachine() {
 		this(null);
 	}
 
 	public GenericStateMachine(T initial) {
+		this(initial, Function.identity(), value -> {
+			@SuppressWarnings("unchecked") T state = (T) value;
+			return state;
+		});
+	}
+
+	/*
+		Callbacks, routers and sequence handlers are passed the values
+		produced by the given function rather than the states themselves,
+		and the decisions made by routers are converted back into states.
+		This lets wrapping state machines register their callbacks directly,
+		with each state being unwrapped only once.
+	 */
+	GenericStateMachine(T initial, Function<? super T, ?> toValue, Function<Object, ? extends T> fromValue) {
+		this.toValue = toValue;
+		this.fromValue = fromValue;
 		setInitialState(initial);
 		reset();
 	}
@@ -111,12 +181,24 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 	public void reset() {
 		doWithTransitionLock(() -> {
 
-			// wait for all tasks to finish first
-			executor.shutdown();
+			// let the previous tasks finish, while new ones go to a fresh executor
+			ExecutorService previous = executor;
+			executor = _newExecutor();
+			previous.shutdown();
+
+			// substates are only ever added, so the active states are still
+			// the current state and some of those enclosing it
+			for (StateContainer state = current; state != null; state = state.parent) {
+				state.entered = StateContainer.NOT_ENTERED;
+			}
 
 			transitions = 0;
 			current = initial;
-			executor = _newExecutor();
+			generation += 1;
+			variables.reset();
+			changes += 1;
+			cancelDelayed();
+			arm(StateContainer.NO_TARGETS, enclosing(initial));
 
 			doWithLock(sequenceLock, () -> {
 
@@ -132,12 +214,41 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 	@Override
 	@SuppressWarnings("unchecked")
 	public boolean transition(final T next) throws TransitionException {
+		checkSynchronous();
+
+		return await(transitionAsync(next));
+	}
+
+	@Override
+	public boolean transition(final T next, final Object payload) throws TransitionException {
+		checkSynchronous();
+
+		return await(transitionAsync(next, payload));
+	}
+
+	@Override
+	public boolean transitionTo(final T target) throws TransitionException {
+		checkSynchronous();
+
+		return await(transitionToAsync(target));
+	}
+
+	/*
+		A synchronous transition from within a transition would wait on
+		itself, whether it comes from a handler holding the lock or from an
+		independent handler which the transition is waiting on in turn.
+	 */
+	private void checkSynchronous() {
 		if (transitionLock.isLocked() && transitionLock.isHeldByCurrentThread()) {
 			throw new TransitionException("a transition inside of a transition cannot be synchronous");
 		}
 
-		Future<Boolean> result = transitionAsync(next);
+		if (INDEPENDENT.get() == this) {
+			throw new TransitionException("a transition from an independent handler cannot be synchronous");
+		}
+	}
 
+	private static boolean await(Future<Boolean> result) {
 		try {
 			return result.get();
 		} catch (InterruptedException e) {
@@ -151,116 +262,484 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 		}
 	}
 
+	/*
+		Submitting a transition only enqueues it. The requested state
+		is resolved and routed once the transition actually runs, so
+		that routers see the state the machine is really in.
+	 */
 	@Override
 	public Future<Boolean> transitionAsync(final T next) throws TransitionException {
-		final AtomicReference<StateContainer> _requestedState = new AtomicReference<>();
-		final AtomicReference<StateContainer> _nextState = new AtomicReference<>();
+		return enqueue(new TransitionTask(next, false, null));
+	}
 
-		doWithTransitionLock(() -> {
-			_requestedState.set(getState(next));
-			_nextState.set(route(next, _requestedState.get()));
-		});
+	@Override
+	public Future<Boolean> transitionAsync(final T next, final Object payload) throws TransitionException {
+		return enqueue(new TransitionTask(next, false, payload));
+	}
 
-		final StateContainer requestedState = _requestedState.get();
-		final StateContainer nextState = _nextState.get();
+	@Override
+	public Future<Boolean> transitionToAsync(final T target) throws TransitionException {
+		return enqueue(new TransitionTask(target, true, null));
+	}
 
-		Callable<Boolean> callable = () -> {
-			return doWithTransitionLock(() -> {
-				if (!current.transitions.containsKey(nextState)) {
-					throw new TransitionException("No transition exists between "+current+" and "+requestedState);
-				}
+	@Override
+	public Future<Boolean> transitionAfter(T state, Duration delay) {
+		return transitionLater(state, nanos(delay));
+	}
 
-				try {
-					return _transition(nextState);
-				} catch (Exception e) {  // TODO maybe scope this to only our own exception types
-					List<Runnable> unfinished = executor.shutdownNow();
+	@Override
+	public Future<Boolean> transitionAt(T state, Instant when) {
+		return transitionLater(state, nanos(Duration.between(Instant.now(), when)));
+	}
 
-					for (Runnable runnable : unfinished) {
-						if (runnable instanceof Future) {
-							((Future) runnable).cancel(true);
-						}
-					}
+	// saturated, for durations too long to count in nanoseconds
+	private static long nanos(Duration duration) {
+		try {
+			return duration.toNanos();
+		} catch (ArithmeticException e) {
+			return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+	}
+
+	private Future<Boolean> transitionLater(T state, long delayNanos) {
+		TransitionTask task = new TransitionTask(state, false, null);
+		task.entry = changes;
+
+		DelayedTransition transition = new DelayedTransition(task);
+		delayed.add(transition);
+		transition.timeout = TimingWheel.shared().schedule(delayNanos, transition);
+
+		return transition;
+	}
+
+	// the number of delayed transitions which have not yet come due
+	int delayedCount() {
+		return delayed.size();
+	}
+
+	/*
+		Queues the transition once its time has come. The transition is
+		cancelled if it is made stale by another transition before then,
+		or by a reset.
+	 */
+	private class DelayedTransition implements Runnable, Future<Boolean> {
+		final TransitionTask task;
+		volatile TimingWheel.Timeout timeout;
+		volatile boolean fired;
+
+		DelayedTransition(TransitionTask task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			fired = true;
+			delayed.remove(this);
+
+			if (!task.result.isDone()) {
+				enqueue(task);
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			TimingWheel.Timeout _timeout = timeout;
+
+			if (_timeout != null) {
+				_timeout.cancel();
+			}
+
+			delayed.remove(this);
+			return task.result.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return task.result.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return task.result.isDone();
+		}
+
+		@Override
+		public Boolean get() throws InterruptedException, ExecutionException {
+			return task.result.get();
+		}
+
+		@Override
+		public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return task.result.get(timeout, unit);
+		}
+	}
+
+	@Override
+	public boolean fire(Object event) throws TransitionException {
+		return fire(event, null);
+	}
+
+	@Override
+	public boolean fire(Object event, Object payload) throws TransitionException {
+		checkSynchronous();
+
+		return await(fireAsync(event, payload));
+	}
+
+	@Override
+	public Future<Boolean> fireAsync(Object event) throws TransitionException {
+		return fireAsync(event, null);
+	}
+
+	@Override
+	public Future<Boolean> fireAsync(Object event, Object payload) throws TransitionException {
+		Integer id = event != null ? events.get(event) : null;
+
+		// an event with no transitions is never handled
+		if (id == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+
+		return enqueue(new TransitionTask(id, payload));
+	}
+
+	private Future<Boolean> enqueue(TransitionTask task) {
+		pending.add(task);
+
+		// start working through the queue if no one else is
+		if (draining.compareAndSet(false, true)) {
+			execute(this::drain);
+		}
+
+		return task.result;
+	}
 
-					executor = _newExecutor();
+	private void execute(Runnable fn) {
+		while (true) {
+			ExecutorService _executor = executor;
+
+			try {
+				_executor.execute(fn);
+				return;
+			} catch (RejectedExecutionException e) {
+
+				// try again if the machine was reset in the meantime
+				if (_executor == executor) {
 					throw e;
 				}
-			});
-		};
+			}
+		}
+	}
+
+	/*
+		Works through the queue of pending transitions. When a transition
+		is waiting on an asynchronous handler, the worker is released and
+		draining resumes once the handler has completed.
+	 */
+	private void drain() {
+		while (true) {
+			final TransitionTask task = pending.peek();
+
+			if (task == null) {
+				draining.set(false);
+
+				// a task could have been added before the flag was cleared
+				if (pending.peek() == null || !draining.compareAndSet(false, true)) {
+					return;
+				}
+
+				continue;
+			}
+
+			final CompletableFuture<Void> waiting;
+
+			try {
+				waiting = doWithTransitionLock(() -> advance(task));
+			} catch (Exception e) {
+				fail(task, e);
+				continue;
+			}
+
+			// finished, so move on to the next one
+			if (waiting == null) {
+				task.result.complete(task.changed);
+				continue;
+			}
+
+			// otherwise pick up where we left off once the handlers have completed
+			waiting.whenComplete((nothing, error) -> execute(() -> {
+				if (error != null) {
+					fail(task, error);
+				}
 
-		return executor.submit(callable);
+				drain();
+			}));
+
+			return;
+		}
 	}
 
-	private boolean _transition(final StateContainer nextState) {
-		onExit();
-		onTransition(nextState);
-		onEntry(nextState);
+	/*
+		Runs the transition until it is either complete or waiting on
+		one or more asynchronous handlers. A transition proceeds by
+		exiting the current state, transitioning, entering the next
+		state, and finally waiting for any independent handlers before
+		committing the new state. A transition towards a target repeats
+		this for each hop along the way.
+	 */
+	private CompletableFuture<Void> advance(TransitionTask task) {
+		while (true) {
+			if (task.phase == TransitionTask.EXIT) {
+				if (!plan(task)) {
+					pending.remove();
+					return null;
+				}
 
-		transitions += 1;
-		doPatternMatching(nextState);
+				task.generation = generation;
+			} else if (task.generation != generation) {
 
-		if (current == nextState) {
-			return false;
-		} else {
-			current = nextState;
-			return true;
+				// the state machine was reset while the handlers were running
+				pending.remove();
+				task.result.cancel(false);
+				return null;
+			}
+
+			CompletableFuture<Void> waiting = advanceHop(task);
+
+			if (waiting != null) {
+				return waiting;
+			}
+
+			transitions += 1;
+			doPatternMatching(task.next);
+
+			if (current != task.next) {
+				task.changed = true;
+				changes += 1;
+				cancelDelayed();
+			}
+
+			current = task.next;
+			arm(task.exits, task.entries);
+
+			if (!task.toTarget || current == task.target) {
+				pending.remove();
+				return null;
+			}
+
+			task.phase = TransitionTask.EXIT;
 		}
 	}
 
+	/*
+		Picks the next hop towards the target, routing it like any other
+		transition. The path is planned again from wherever the previous
+		hop ended up, so a router can safely redirect along the way.
+	 */
 	@SuppressWarnings("unchecked")
-	private void doPatternMatching(StateContainer nextState) {
-		final AtomicReference<List<StateContainer>> _recent = new AtomicReference<>();
-		final AtomicReference<List<PatternMatcher<T>>> _matchers = new AtomicReference<>();
+	private boolean plan(TransitionTask task) {
 
-		doWithLock(sequenceLock, () -> {
+		// a guarded transition is stale once the state has changed
+		if (task.entry != TransitionTask.UNGUARDED) {
+			long entry = task.within != null ? task.within.entered : changes;
+
+			if (task.entry != entry || task.result.isDone()) {
+				task.result.cancel(false);
+				return false;
+			}
+		}
+
+		if (task.event != TransitionTask.NO_EVENT) {
+			StateContainer[] targets = current.targets;
+
+			// ignored if not handled in the current state
+			if (task.event >= targets.length || targets[task.event] == null) {
+				return false;
+			}
+
+			task.requested = targets[task.event];
+			task.next = route(task, task.requested);
+			return true;
+		}
+
+		if (!task.toTarget) {
+			task.requested = findState((T) task.state);
+			task.next = route(task, task.requested);
+			return true;
+		}
+
+		if (task.target == null) {
+			task.target = findState((T) task.state);
+		}
+
+		if (current == task.target) {
+			return false;
+		}
+
+		if (paths == null) {
+			paths = new Paths(states.values());
+		}
+
+		StateContainer hop = paths.nextHop(current, task.target);
+
+		if (hop == null) {
+			task.cancelPending = false;
+			throw new TransitionException("No path exists between "+current+" and "+task.target);
+		}
+
+		// a router which keeps redirecting could otherwise go on forever
+		if (++task.hops > states.size()) {
+			task.cancelPending = false;
+			throw new TransitionException("Unable to reach "+task.target+" from "+current);
+		}
+
+		task.requested = hop;
+		task.next = route(task, hop);
+		return true;
+	}
+
+	// a failed router only fails its own transition
+	private StateContainer route(TransitionTask task, StateContainer requestedState) {
+		task.cancelPending = false;
+		StateContainer nextState = route(requestedState, task.payload);
+		task.cancelPending = true;
+
+		return nextState;
+	}
+
+	private CompletableFuture<Void> advanceHop(TransitionTask task) {
+		while (task.phase != TransitionTask.COMMIT) {
+			switch (task.phase++) {
+				case TransitionTask.EXIT:
+					if (!resolve(task)) {
+						task.cancelPending = false;
+						throw new TransitionException("No transition exists between "+current+" and "+task.requested);
+					}
+
+					onExit(task);
+					break;
+
+				case TransitionTask.TRANSITION:
+					onTransition(task);
+					break;
+
+				case TransitionTask.ENTRY:
+					onEntry(task);
+					break;
+
+				case TransitionTask.JOIN:
+					task.waiting = task.independent;
+					task.independent = null;
+					break;
+			}
+
+			if (task.waiting != null) {
+				CompletableFuture<?>[] stages = task.waiting.toArray(new CompletableFuture<?>[task.waiting.size()]);
+				task.waiting = null;
+
+				return CompletableFuture.allOf(stages);
+			}
+		}
+
+		return null;
+	}
+
+	private void fail(TransitionTask task, Throwable error) {
+		if (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+
+		pending.remove(task);
+
+		// a failed handler will cancel all of the pending transitions
+		if (task.cancelPending) {
+			TransitionTask t;
+
+			while ((t = pending.poll()) != null) {
+				t.result.cancel(true);
+			}
+		}
+
+		task.result.completeExceptionally(error);
+	}
+
+	private void doPatternMatching(StateContainer nextState) {
+		sequenceLock.lock();
 
+		try {
 			if (maxRecent != 0) {
 				recentStates.add(nextState);
+			} else {
+				recentStates.removeOldest();
+			}
+
+			for (Object item : matchers.items) {
+				PatternMatcher matcher = (PatternMatcher) item;
+
+				if (recentStates.matches(matcher.pattern)) {
+					matcher.handler.onMatch(recentStates.window(matcher.pattern.length));
+				}
 			}
+		} finally {
+			sequenceLock.unlock();
+		}
+	}
 
-			if (recentStates.size() > maxRecent) {
-				recentStates.remove();
+	private StateContainer route(StateContainer requestedState, Object payload) {
+		final List<StateRouter<Object>> _routers;
+		final boolean memoize;
+
+		routingLock.readLock().lock();
+
+		try {
+			if (routers.isEmpty()) {
+				return requestedState;
 			}
 
-			_recent.set(new ArrayList<>(recentStates));
-			_matchers.set(new ArrayList<>(matchers));
-		});
+			_routers = new ArrayList<>(routers);
+			memoize = pureRouters && current.id != StateContainer.UNKNOWN && requestedState.id != StateContainer.UNKNOWN;
+		} finally {
+			routingLock.readLock().unlock();
+		}
 
-		List<StateContainer> recent = Collections.unmodifiableList(_recent.get());
-		List<PatternMatcher<T>> matchers = _matchers.get();
+		if (memoize) {
+			Map<StateContainer, StateContainer> memo = current.decisions;
 
-		for (PatternMatcher<T> matcher : matchers) {
-			Optional<List<T>> matches = matcher.matches(recent);
+			if (memo == null || current.decided != decided) {
+				memo = current.decisions = new HashMap<>();
+				current.decided = decided;
+			}
+
+			StateContainer nextState = memo.get(requestedState);
 
-			if (matches.isPresent()) {
-				matcher.handler.onMatch(matches.get());
+			if (nextState == null) {
+				nextState = route(_routers, requestedState, payload);
+				memo.put(requestedState, nextState);
 			}
+
+			return nextState;
 		}
 
+		return route(_routers, requestedState, payload);
 	}
 
-	private StateContainer route(T next, StateContainer requestedState) {
-		final List<StateRouter<T>> _routers = doWithLock(routingLock.readLock(), () -> {
-			return new ArrayList<>(routers);
-		});
-
+	private StateContainer route(List<StateRouter<Object>> _routers, StateContainer requestedState, Object payload) {
 		StateContainer nextState = null;
 
 		// routing
-		for (StateRouter<T> router : _routers) {
-
-			@SuppressWarnings("unchecked")
-			T decision = router.route((T) current.state, next);
+		for (StateRouter<Object> router : _routers) {
+			Object decision = route(router, current.value, requestedState.value, payload);
 
 			if (decision != null) {
 
 				// if it's the same, bypass lookup
-				if (decision == next) {
+				if (decision == requestedState.value) {
 					nextState = requestedState;
 				}
 
 				// otherwise lookup the new state
 				else {
-					nextState = getState(decision);
+					nextState = findState(fromValue.apply(decision));
 				}
 			}
 		}
@@ -274,37 +753,189 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 	}
 
 	@SuppressWarnings("unchecked")
-	private void onEntry(StateContainer nextState) {
-		for (StateHandler handler : globalOnEntryHandlers) {
-			handler.onState(nextState.state);
+	private static Object route(StateRouter<Object> router, Object current, Object next, Object payload) {
+		if (router instanceof PayloadStateRouter) {
+			return ((PayloadStateRouter<Object, Object>) router).route(current, next, payload);
+		} else {
+			return router.route(current, next);
+		}
+	}
+
+	/*
+		Finds the transition to take, along with the states to exit and
+		enter. Without substates that is just the current and next states.
+	 */
+	private boolean resolve(TransitionTask task) {
+		if (!hierarchical) {
+			if (!current.hasTransition(task.next)) {
+				return false;
+			}
+
+			task.transition = current.transitions.get(task.next);
+			task.exits = current.self;
+			task.entries = task.next.self;
+			return true;
+		}
+
+		Edge edge = edge(current, task.next);
+
+		if (edge == null) {
+			return false;
+		}
+
+		task.transition = edge.transition;
+		task.exits = edge.exits;
+		task.entries = edge.entries;
+		return true;
+	}
+
+	/*
+		Works out the exits and entries of a transition, including the
+		inherited ones, the first time it is taken from the state. Should
+		be called while holding the transition lock.
+	 */
+	private Edge edge(StateContainer from, StateContainer to) {
+		if (from.id == StateContainer.UNKNOWN || to.id == StateContainer.UNKNOWN) {
+			return null;
+		}
+
+		if (from.edges == null || from.shape != shape) {
+			from.edges = new HashMap<>();
+			from.shape = shape;
+		}
+
+		Edge edge = from.edges.get(to);
+
+		if (edge == null) {
+			edge = Edge.between(from, to);
+
+			if (edge != null) {
+				from.edges.put(to, edge);
+			}
+		}
+
+		return edge;
+	}
+
+	// the state and the states enclosing it, from the outside in
+	private static StateContainer[] enclosing(StateContainer state) {
+		int depth = 0;
+
+		for (StateContainer s = state; s != null; s = s.parent) {
+			depth += 1;
+		}
+
+		StateContainer[] chain = new StateContainer[depth];
+
+		for (StateContainer s = state; s != null; s = s.parent) {
+			chain[--depth] = s;
 		}
 
-		for (StateHandler entryAction : nextState.entryActions) {
-			entryAction.onState(nextState.state);
+		return chain;
+	}
+
+	private void onEntry(TransitionTask task) {
+		for (StateContainer state : task.entries) {
+			for (Object handler : globalOnEntryHandlers.items) {
+				dispatch(task, (StateHandler) handler, state.value);
+			}
+
+			for (Object entryAction : state.entryActions.items) {
+				dispatch(task, (StateHandler) entryAction, state.value);
+			}
+		}
+	}
+
+	private void onTransition(TransitionTask task) {
+		for (Object handler : globalOnTransitionHandlers.items) {
+			dispatch(task, (TransitionHandler) handler, current.value, task.next.value);
+		}
+
+		for (Object handler : task.transition.callbacks.items) {
+			dispatch(task, (TransitionHandler) handler, current.value, task.next.value);
 		}
 	}
 
+	private void onExit(TransitionTask task) {
+		for (StateContainer state : task.exits) {
+			for (Object handler : globalOnExitHandlers.items) {
+				dispatch(task, (StateHandler) handler, state.value);
+			}
+
+			for (Object handler : state.exitActions.items) {
+				dispatch(task, (StateHandler) handler, state.value);
+			}
+		}
+	}
+
+	private void fork(TransitionTask task, Runnable handler) {
+		task.fork(independentExecutor, () -> {
+			GenericStateMachine<?> outer = INDEPENDENT.get();
+			INDEPENDENT.set(this);
+
+			try {
+				handler.run();
+			} finally {
+				INDEPENDENT.set(outer);
+			}
+		});
+	}
+
 	@SuppressWarnings("unchecked")
-	private void onTransition(StateContainer nextState) {
-		for (TransitionHandler handler : globalOnTransitionHandlers) {
-			handler.onTransition(current.state, nextState.state);
+	private void dispatch(TransitionTask task, StateHandler handler, Object state) {
+		if (handler instanceof AsyncStateHandler) {
+			task.await(callAsync((AsyncStateHandler) handler, state, task.payload));
+		} else if (handler instanceof IndependentStateHandler) {
+			fork(task, () -> call(handler, state, task.payload));
+		} else {
+			call(handler, state, task.payload);
 		}
+	}
 
-		Transition transition = current.transitions.get(nextState);
+	@SuppressWarnings("unchecked")
+	private void dispatch(TransitionTask task, TransitionHandler handler, Object from, Object to) {
+		if (handler instanceof AsyncTransitionHandler) {
+			task.await(callAsync((AsyncTransitionHandler) handler, from, to, task.payload));
+		} else if (handler instanceof IndependentTransitionHandler) {
+			fork(task, () -> call(handler, from, to, task.payload));
+		} else {
+			call(handler, from, to, task.payload);
+		}
+	}
 
-		for (TransitionHandler handler : transition.callbacks) {
-			handler.onTransition(current.state, nextState.state);
+	@SuppressWarnings("unchecked")
+	private static void call(StateHandler handler, Object state, Object payload) {
+		if (handler instanceof PayloadStateHandler) {
+			((PayloadStateHandler) handler).onState(state, payload);
+		} else {
+			handler.onState(state);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
-	private void onExit() {
-		for (StateHandler handler : globalOnExitHandlers) {
-			handler.onState(current.state);
+	private static void call(TransitionHandler handler, Object from, Object to, Object payload) {
+		if (handler instanceof PayloadTransitionHandler) {
+			((PayloadTransitionHandler) handler).onTransition(from, to, payload);
+		} else {
+			handler.onTransition(from, to);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CompletionStage<Void> callAsync(AsyncStateHandler handler, Object state, Object payload) {
+		if (handler instanceof PayloadAsyncStateHandler) {
+			return ((PayloadAsyncStateHandler) handler).onStateAsync(state, payload);
+		} else {
+			return handler.onStateAsync(state);
 		}
+	}
 
-		for (StateHandler handler : current.exitActions) {
-			handler.onState(current.state);
+	@SuppressWarnings("unchecked")
+	private static CompletionStage<Void> callAsync(AsyncTransitionHandler handler, Object from, Object to, Object payload) {
+		if (handler instanceof PayloadAsyncTransitionHandler) {
+			return ((PayloadAsyncTransitionHandler) handler).onTransitionAsync(from, to, payload);
+		} else {
+			return handler.onTransitionAsync(from, to);
 		}
 	}
 
@@ -338,6 +969,22 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 		});
 	}
 
+	/**
+	 * Sets the executor which runs the independent handlers. By default they
+	 * run on the common {@link ForkJoinPool}, or on a new thread each if the
+	 * pool cannot run tasks in parallel.
+	 *
+	 * @param executor to run the independent handlers, or null for the default
+	 */
+	public void setIndependentExecutor(Executor executor) {
+		independentExecutor = executor;
+	}
+
+	@Override
+	public StateVariables variables() {
+		return variables;
+	}
+
 	@Override
 	public void addAllTransitions(List<T> states, boolean includeSelf) {
 		doWithTransitionLock(() -> {
@@ -388,6 +1035,153 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 		};
 	}
 
+	@Override
+	public HandlerRegistration onTimeout(T state, Duration timeout, T target) {
+		final long nanos = nanos(timeout);
+
+		if (nanos < 0) {
+			throw new IllegalArgumentException("timeout cannot be negative");
+		}
+
+		final StateTimeout stateTimeout = doWithTransitionLock(() -> {
+			StateContainer s = getState(state);
+
+			// a new transition resets the state machine, an existing one does not
+			if (!s.hasTransition(getState(target))) {
+				addTransition(state, target);
+			}
+
+			StateTimeout t = new StateTimeout(s, nanos, getState(target).state);
+			s.timeouts.add(t);
+
+			// already in the state, so start counting now
+			if (s.entered != StateContainer.NOT_ENTERED) {
+				arm(t);
+			}
+
+			return t;
+		});
+
+		return new HandlerRegistration() {
+			public void unregister() {
+				doWithTransitionLock(() -> {
+					stateTimeout.from.timeouts.remove(stateTimeout);
+
+					if (armed != null) {
+						armed.removeIf(t -> ((Expiry) t.task).timeout == stateTimeout && t.cancel());
+					}
+				});
+			}
+		};
+	}
+
+	/*
+		Cancels the delayed transitions which were scheduled before the
+		state last changed. Should be called while holding the transition lock.
+	 */
+	private void cancelDelayed() {
+		if (delayed.isEmpty()) {
+			return;
+		}
+
+		for (Iterator<DelayedTransition> it = delayed.iterator(); it.hasNext();) {
+			DelayedTransition transition = it.next();
+
+			// those which were scheduled just now can stay
+			if (transition.task.entry == changes) {
+				continue;
+			}
+
+			it.remove();
+
+			// those which have already been queued will be cancelled when run
+			if (!transition.fired) {
+				transition.cancel(false);
+			}
+		}
+	}
+
+	/*
+		Cancels the timeouts of the states which were exited and starts
+		those of the states which were entered. The timeouts of enclosing
+		states which were neither exited nor entered keep on running.
+		Should be called while holding the transition lock.
+	 */
+	private void arm(StateContainer[] exited, StateContainer[] entered) {
+		entries += 1;
+
+		for (StateContainer state : exited) {
+			state.entered = StateContainer.NOT_ENTERED;
+		}
+
+		if (armed != null && !armed.isEmpty()) {
+			armed.removeIf(this::disarm);
+		}
+
+		for (StateContainer state : entered) {
+			state.entered = entries;
+
+			for (Object item : state.timeouts.items) {
+				arm((StateTimeout) item);
+			}
+		}
+	}
+
+	private void arm(StateTimeout timeout) {
+		if (armed == null) {
+			armed = new ArrayList<>(1);
+		}
+
+		long entry = timeout.from.entered;
+		armed.add(TimingWheel.shared().schedule(timeout.nanos, new Expiry(timeout, entry)));
+	}
+
+	// cancels the timeout if its state has been exited since it was started
+	private boolean disarm(TimingWheel.Timeout timeout) {
+		Expiry expiry = (Expiry) timeout.task;
+
+		if (expiry.timeout.from.entered == expiry.entry) {
+			return false;
+		}
+
+		timeout.cancel();
+		return true;
+	}
+
+	private static class StateTimeout {
+		final StateContainer from;
+		final long nanos;
+		final State target;
+
+		StateTimeout(StateContainer from, long nanos, State target) {
+			this.from = from;
+			this.nanos = nanos;
+			this.target = target;
+		}
+	}
+
+	/*
+		Queues the transition once a timeout has elapsed. If the state
+		was left in the meantime, then the transition is ignored.
+	 */
+	private class Expiry implements Runnable {
+		final StateTimeout timeout;
+		final long entry;
+
+		Expiry(StateTimeout timeout, long entry) {
+			this.timeout = timeout;
+			this.entry = entry;
+		}
+
+		@Override
+		public void run() {
+			TransitionTask task = new TransitionTask(timeout.target, false, null);
+			task.entry = entry;
+			task.within = timeout.from;
+			enqueue(task);
+		}
+	}
+
 	@Override
 	public HandlerRegistration onExiting(final StateHandler<T> callback) {
 		doWithTransitionLock(() -> {
@@ -458,85 +1252,130 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 			throw new IllegalArgumentException("router cannot be null");
 		}
 
+		return addRouter(untyped(router));
+	}
+
+	private HandlerRegistration addRouter(final StateRouter<Object> router) {
 		doWithLock(routingLock.writeLock(), () -> {
 			routers.add(router);
+			pureRouters &= isPure(router);
 		});
 
+		forgetDecisions();
+
 		return new HandlerRegistration() {
 			public void unregister() {
 				doWithLock(routingLock.writeLock(), () -> {
 					routers.remove(router);
+					pureRouters = routers.stream().allMatch(GenericStateMachine::isPure);
 				});
+
+				forgetDecisions();
 			}
 		};
 	}
 
-	@Override
-	public HandlerRegistration routeOnTransition(final T from, final T to, final StateRouter<T> router) {
-		return routeOnTransition(new StateRouter<T>() {
-			public T route(T current, T next) {
-
-				// only route if it matches the pattern
-				if (current == from && next == to) {
-					return router.route(current, next);
-				} else {
-					return null;
-				}
-			}
+	/*
+		Holding the transition lock means that no routing is in progress,
+		and so no decisions made by the old routers can be kept.
+	 */
+	private void forgetDecisions() {
+		doWithTransitionLock(() -> {
+			decided += 1;
 		});
 	}
 
+	private static boolean isPure(StateRouter<?> router) {
+		if (router instanceof FilteredRouter) {
+			router = ((FilteredRouter) router).router;
+		}
+
+		// a payload router can decide differently every time
+		return router instanceof PureStateRouter && !(router instanceof PayloadStateRouter);
+	}
+
 	@Override
-	public HandlerRegistration routeBeforeEntering(final T to, final StateRouter<T> router) {
-		return routeOnTransition(new StateRouter<T>() {
-			public T route(T current, T next) {
+	public HandlerRegistration routeOnTransition(final T from, final T to, final StateRouter<T> router) {
+		return addRouter(new FilteredRouter(true, valueOf(from), true, valueOf(to), untyped(router)));
+	}
 
-				// only route if it matches the pattern
-				if (next == to) {
-					return router.route(current, next);
-				} else {
-					return null;
-				}
-			}
-		});
+	@Override
+	public HandlerRegistration routeBeforeEntering(final T to, final StateRouter<T> router) {
+		return addRouter(new FilteredRouter(false, null, true, valueOf(to), untyped(router)));
 	}
 
 	@Override
 	public HandlerRegistration routeAfterExiting(final T from, final StateRouter<T> router) {
-		return routeOnTransition(new StateRouter<T>() {
-			public T route(T current, T next) {
+		return addRouter(new FilteredRouter(true, valueOf(from), false, null, untyped(router)));
+	}
 
-				// only route if it matches the pattern
-				if (current == from) {
-					return router.route(current, next);
-				} else {
-					return null;
-				}
+	/*
+		Only routes the transitions which match. A filtered router
+		is pure if the router it is filtering is pure.
+	 */
+	private static class FilteredRouter implements PayloadStateRouter<Object, Object> {
+		private final boolean matchFrom;
+		private final Object from;
+		private final boolean matchTo;
+		private final Object to;
+		final StateRouter<Object> router;
+
+		FilteredRouter(boolean matchFrom, Object from, boolean matchTo, Object to, StateRouter<Object> router) {
+			this.matchFrom = matchFrom;
+			this.from = from;
+			this.matchTo = matchTo;
+			this.to = to;
+			this.router = router;
+		}
+
+		@Override
+		public Object route(Object current, Object next, Object payload) {
+
+			// only route if it matches the pattern
+			if ((!matchFrom || current == from) && (!matchTo || next == to)) {
+				return GenericStateMachine.route(router, current, next, payload);
+			} else {
+				return null;
 			}
-		});
+		}
+	}
+
+	/*
+		Routers are called with values rather than states, which are only
+		the same thing when the state machine is not being wrapped.
+	 */
+	@SuppressWarnings("unchecked")
+	private static StateRouter<Object> untyped(StateRouter<?> router) {
+		return (StateRouter<Object>) router;
 	}
 
 	@Override
 	public HandlerRegistration onSequence(Pattern<T> pattern, SequenceHandler<T> handler) {
-		final PatternMatcher<T> matcher = new PatternMatcher<>(pattern, handler);
+		final PatternMatcher matcher = new PatternMatcher(pattern, handler);
 
 		doWithLock(sequenceLock, () -> {
 			matchers.add(matcher);
 
-			// recalculate the cache size on add
-			maxRecent = Math.max(maxRecent, pattern.length());
+			// grow the buffer on add
+			if (matcher.pattern.length > maxRecent) {
+				maxRecent = matcher.pattern.length;
+				recentStates.resize(maxRecent);
+			}
 		});
 
 		return () -> {
 			doWithLock(sequenceLock, () -> {
 				matchers.remove(matcher);
 
-				// recalculate the cache size on remove
-				Optional<Integer> max = matchers.stream()
-					.map(e -> e.pattern.length())
-					.max(Integer::compareTo);
+				// recalculate the buffer size on remove
+				int max = 0;
 
-				maxRecent = max.orElse(0);
+				for (Object item : matchers.items) {
+					max = Math.max(max, ((PatternMatcher) item).pattern.length);
+				}
+
+				maxRecent = max;
+				recentStates.resize(max);
 			});
 		};
 	}
@@ -571,6 +1410,37 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 		return addTransitions(callback, true, fromState, Arrays.asList(toStates));
 	}
 
+	@Override
+	public boolean addEventTransitions(Object event, List<T> fromStates, T toState) {
+		if (event == null) {
+			throw new IllegalArgumentException("event cannot be null");
+		}
+
+		return doWithTransitionLock(() -> {
+			boolean modified = false;
+
+			for (T fromState : fromStates) {
+				modified |= addTransitions(null, true, fromState, Collections.singletonList(toState));
+			}
+
+			// only ever assigned while holding the lock
+			int id = events.computeIfAbsent(event, e -> events.size());
+			StateContainer to = getState(toState);
+
+			for (T fromState : fromStates) {
+				StateContainer from = getState(fromState);
+
+				if (id >= from.targets.length) {
+					from.targets = Arrays.copyOf(from.targets, id + 1);
+				}
+
+				from.targets[id] = to;
+			}
+
+			return modified;
+		});
+	}
+
 	private boolean addTransitions(TransitionHandler<T> callback, boolean create, T fromState, List<T> toStates) {
 		Set<T> set = new HashSet<>(toStates);
 
@@ -582,11 +1452,11 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 				StateContainer to = getState(state);
 				Transition transition = null;
 
-				if (from.transitions.containsKey(to)) {
+				if (from.hasTransition(to)) {
 					transition = from.transitions.get(to);
 				} else if (create) {
 					transition = new Transition(to);
-					from.transitions.put(to, transition);
+					from.addTransition(transition);
 					modified = true;
 				}
 
@@ -595,7 +1465,48 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 				}
 			}
 
-			if (modified) { reset(); }
+			if (modified) {
+				paths = null;
+				shape += 1;
+				reset();
+			}
+			return modified;
+		});
+	}
+
+	@Override
+	public boolean addSubstates(T parentState, List<T> substates) {
+		return doWithTransitionLock(() -> {
+			StateContainer parent = getState(parentState);
+			boolean modified = false;
+
+			for (T state : substates) {
+				StateContainer substate = getState(state);
+
+				if (substate.parent == parent) {
+					continue;
+				}
+
+				if (substate.parent != null) {
+					throw new IllegalArgumentException("state "+substate+" is already a substate of "+substate.parent);
+				}
+
+				for (StateContainer s = parent; s != null; s = s.parent) {
+					if (s == substate) {
+						throw new IllegalArgumentException("state "+substate+" cannot be a substate of itself");
+					}
+				}
+
+				substate.parent = parent;
+				modified = true;
+			}
+
+			if (modified) {
+				hierarchical = true;
+				paths = null;
+				shape += 1;
+				reset();
+			}
 			return modified;
 		});
 	}
@@ -616,12 +1527,16 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 			for (T state : set) {
 				StateContainer to = getState(state);
 
-				if (from.transitions.remove(to) != null) {
+				if (from.removeTransition(to)) {
 					modified = true;
 				}
 			}
 
-			if (modified) { reset(); }
+			if (modified) {
+				paths = null;
+				shape += 1;
+				reset();
+			}
 			return modified;
 		});
 	}
@@ -680,28 +1595,197 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 		return sb.toString();
 	}
 
-	private StateContainer getState(T token) {
-		StateWrapper wrapped = new StateWrapper(token);
-
+	/*
+		Used by the binary format. The states are listed in the order
+		in which they were created, which is also the order of their ids.
+	 */
+	StateMachineBinaryFormat.Graph exportGraph() {
 		return doWithTransitionLock(() -> {
-			if (states.containsKey(wrapped)) {
-				return states.get(wrapped);
+			String[] names = new String[states.size()];
+			int[][] adjacency = new int[states.size()][];
+
+			for (StateContainer s : states.values()) {
+				int[] edges = new int[s.transitions.size()];
+				int i = 0;
+
+				for (StateContainer to : s.transitions.keySet()) {
+					edges[i++] = to.id;
+				}
+
+				Arrays.sort(edges);
+				names[s.id] = fullString(s.state);
+				adjacency[s.id] = edges;
 			}
 
-			StateContainer s = new StateContainer(token);
+			return new StateMachineBinaryFormat.Graph(names, initial.id, adjacency);
+		});
+	}
+
+	/*
+		Adds all of the transitions at once, with a single reset at the end
+		rather than one for every new transition.
+	 */
+	void importGraph(List<T> tokens, int initialIndex, int[][] adjacency) {
+		doWithTransitionLock(() -> {
+			StateContainer[] containers = new StateContainer[tokens.size()];
+
+			for (int i=0; i < containers.length; ++i) {
+				containers[i] = getState(tokens.get(i));
+			}
+
+			for (int i=0; i < containers.length; ++i) {
+				StateContainer from = containers[i];
+
+				for (int j : adjacency[i]) {
+					StateContainer to = containers[j];
+
+					if (!from.hasTransition(to)) {
+						from.addTransition(new Transition(to));
+					}
+				}
+			}
+
+			if (initialIndex >= 0) {
+				initial = containers[initialIndex];
+			}
+
+			paths = null;
+			shape += 1;
+			reset();
+		});
+	}
+
+	/*
+		Should be called while holding the transition lock. The instance
+		which created a state is remembered, so that looking it up again
+		later (as with enum states, which are canonical) skips the name
+		based lookup.
+	 */
+	private StateContainer getState(T token) {
+		StateContainer s = statesByIdentity.get(token);
+
+		if (s != null) {
+			return s;
+		}
+
+		StateWrapper wrapped = new StateWrapper(token);
+		s = states.get(wrapped);
+
+		if (s == null) {
+			s = new StateContainer(token, states.size(), valueOf(token));
+			paths = null;
+			decided += 1;
 			states.put(wrapped, s);
+			statesByIdentity.put(token, s);
+		}
+
+		return s;
+	}
+
+	/*
+		Like getState, except that a state which is unknown to the state
+		machine is not remembered. An unknown state has no transitions
+		leading to it, so any attempt to enter it will fail.
+	 */
+	private StateContainer findState(T token) {
+		StateContainer s = statesByIdentity.get(token);
+
+		if (s != null) {
 			return s;
-		});
+		}
+
+		s = states.get(new StateWrapper(token));
+		return s != null ? s : new StateContainer(token, StateContainer.UNKNOWN, valueOf(token));
+	}
+
+	private Object valueOf(T state) {
+		return state != null ? toValue.apply(state) : null;
 	}
 
 	private static class StateContainer implements Comparable<StateContainer> {
+		static final int UNKNOWN = -1;
+		static final long NOT_ENTERED = 0;
+
+		private static final long[] NO_TRANSITIONS = new long[0];
+		private static final StateContainer[] NO_TARGETS = new StateContainer[0];
+
 		final State state;
+		final int id;
+
+		// what the callbacks see, which is computed once per state
+		final Object value;
 		final Map<StateContainer, Transition> transitions = new HashMap<>();
-		final Set<StateHandler> entryActions = new HashSet<>();
-		final Set<StateHandler> exitActions = new HashSet<>();
+		final Handlers entryActions = new Handlers();
+		final Handlers exitActions = new Handlers();
+
+		// bitset of the ids of the states which can be transitioned to
+		private long[] adjacency = NO_TRANSITIONS;
+
+		// the target of each event, by event id
+		StateContainer[] targets = NO_TARGETS;
 
-		StateContainer(State state) {
+		// timeouts which are started upon entering the state
+		final Handlers timeouts = new Handlers();
+
+		// the enclosing state, if this is a substate
+		StateContainer parent;
+
+		// when the state was last entered, if it is still active
+		long entered = NOT_ENTERED;
+
+		// where the pure routers sent each requested state, while in this one
+		Map<StateContainer, StateContainer> decisions;
+		int decided;
+
+		// the exits and entries of each transition taken from here
+		Map<StateContainer, Edge> edges;
+		int shape;
+
+		// exited or entered on its own, when there are no substates
+		final StateContainer[] self = { this };
+
+		StateContainer(State state, int id, Object value) {
 			this.state = state;
+			this.id = id;
+			this.value = value;
+		}
+
+		boolean hasTransition(StateContainer to) {
+			if (to.id == UNKNOWN) {
+				return false;
+			}
+
+			int word = to.id >>> 6;
+			return word < adjacency.length && (adjacency[word] & (1L << to.id)) != 0;
+		}
+
+		void addTransition(Transition transition) {
+			int word = transition.next.id >>> 6;
+
+			if (word >= adjacency.length) {
+				adjacency = Arrays.copyOf(adjacency, word + 1);
+			}
+
+			adjacency[word] |= 1L << transition.next.id;
+			transitions.put(transition.next, transition);
+		}
+
+		boolean removeTransition(StateContainer to) {
+			if (!hasTransition(to)) {
+				return false;
+			}
+
+			adjacency[to.id >>> 6] &= ~(1L << to.id);
+			transitions.remove(to);
+
+			// events no longer lead there from here
+			for (int i=0; i < targets.length; ++i) {
+				if (targets[i] == to) {
+					targets[i] = null;
+				}
+			}
+
+			return true;
 		}
 
 		@Override
@@ -712,7 +1796,7 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 		@Override
 		public int compareTo(StateContainer other) {
 			String n1 = state == null ? "" : state.name();
-			String n2 = other == null ? "" : other.state.name();
+			String n2 = other.state == null ? "" : other.state.name();
 			return n1.compareTo(n2);
 		}
 	}
@@ -757,7 +1841,7 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 
 	private static class Transition {
 		final StateContainer next;
-		final Set<TransitionHandler> callbacks = new HashSet<>();
+		final Handlers callbacks = new Handlers();
 
 		Transition(StateContainer next) {
 			this.next = next;
@@ -775,48 +1859,404 @@ public class GenericStateMachine<T extends State> implements StateMachine<T> {
 //		}
 	}
 
-	private static class PatternMatcher<T> {
-		private final Pattern<T> pattern;
+	/*
+		A copy-on-write set of handlers, which can be iterated
+		without allocating, and safely modified by the handlers
+		themselves while being iterated.
+	 */
+	private static class Handlers {
+		private static final Object[] EMPTY = new Object[0];
+		Object[] items = EMPTY;
+
+		void add(Object handler) {
+			for (Object item : items) {
+				if (item.equals(handler)) {
+					return;
+				}
+			}
+
+			Object[] copy = Arrays.copyOf(items, items.length + 1);
+			copy[items.length] = handler;
+			items = copy;
+		}
+
+		void remove(Object handler) {
+			for (int i=0; i < items.length; ++i) {
+				if (items[i].equals(handler)) {
+					Object[] copy = new Object[items.length - 1];
+					System.arraycopy(items, 0, copy, 0, i);
+					System.arraycopy(items, i + 1, copy, i, items.length - i - 1);
+					items = copy;
+					return;
+				}
+			}
+		}
+	}
+
+	private static class TransitionTask {
+		static final int EXIT = 0;
+		static final int TRANSITION = 1;
+		static final int ENTRY = 2;
+		static final int JOIN = 3;
+		static final int COMMIT = 4;
+
+		static final int NO_EVENT = -1;
+		static final long UNGUARDED = -1;
+
+		// the state as it was submitted, resolved when the task runs
+		final State state;
+		final boolean toTarget;
+		final Object payload;
+
+		// the event which was fired, whose target depends on the current state
+		final int event;
+
+		// if guarded, the number of state changes when the task was created,
+		// or when the given state was entered if there is one
+		long entry = UNGUARDED;
+		StateContainer within;
+
+		// the target of a multi-hop transition, otherwise null
+		StateContainer target;
+
+		StateContainer requested;
+		StateContainer next;
+		final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+		// the generation of the state machine when the current hop was planned
+		long generation;
+
+		int phase = EXIT;
+		int hops = 0;
+		boolean changed;
+		boolean cancelPending = true;
+
+		// the transition being taken, and the states which it exits and enters
+		Transition transition;
+		StateContainer[] exits;
+		StateContainer[] entries;
+
+		// asynchronous handlers for the current phase
+		List<CompletableFuture<?>> waiting;
+
+		// independent handlers, which are joined before committing
+		List<CompletableFuture<?>> independent;
+
+		TransitionTask(State state, boolean toTarget, Object payload) {
+			this.state = state;
+			this.toTarget = toTarget;
+			this.payload = payload;
+			this.event = NO_EVENT;
+		}
+
+		TransitionTask(int event, Object payload) {
+			this.state = null;
+			this.toTarget = false;
+			this.payload = payload;
+			this.event = event;
+		}
+
+		void await(CompletionStage<?> stage) {
+			if (stage == null) {
+				return;
+			}
+
+			CompletableFuture<?> future = stage.toCompletableFuture();
+
+			// fail fast, and skip the handlers which have already finished
+			if (future.isDone()) {
+				future.join();
+			} else {
+				if (waiting == null) {
+					waiting = new ArrayList<>();
+				}
+				waiting.add(future);
+			}
+		}
+
+		void fork(Executor executor, Runnable handler) {
+			if (independent == null) {
+				independent = new ArrayList<>();
+			}
+
+			if (executor != null) {
+				independent.add(CompletableFuture.runAsync(handler, executor));
+			} else {
+				independent.add(CompletableFuture.runAsync(handler));
+			}
+		}
+	}
+
+	/*
+		A transition between two states, taking substates into account.
+		The transition can be inherited from any of the enclosing states
+		of the state being exited. It exits states up to the innermost
+		state which encloses both ends, and then enters states down from
+		there, so that a transition to an enclosing state exits and enters
+		that state again.
+	 */
+	private static class Edge {
+		final Transition transition;
+		final StateContainer[] exits;
+		final StateContainer[] entries;
+
+		private Edge(Transition transition, StateContainer[] exits, StateContainer[] entries) {
+			this.transition = transition;
+			this.exits = exits;
+			this.entries = entries;
+		}
+
+		static Edge between(StateContainer from, StateContainer to) {
+			Transition transition = null;
+
+			for (StateContainer s = from; s != null && transition == null; s = s.parent) {
+				transition = s.transitions.get(to);
+			}
+
+			if (transition == null) {
+				return null;
+			}
+
+			// the innermost state enclosing both, if any
+			Set<StateContainer> enclosing = Collections.newSetFromMap(new IdentityHashMap<>());
+
+			for (StateContainer s = to.parent; s != null; s = s.parent) {
+				enclosing.add(s);
+			}
+
+			StateContainer common = from.parent;
+
+			while (common != null && !enclosing.contains(common)) {
+				common = common.parent;
+			}
+
+			List<StateContainer> exits = new ArrayList<>();
+
+			for (StateContainer s = from; s != common; s = s.parent) {
+				exits.add(s);
+			}
+
+			List<StateContainer> entries = new ArrayList<>();
+
+			for (StateContainer s = to; s != common; s = s.parent) {
+				entries.add(s);
+			}
+
+			Collections.reverse(entries);
+
+			return new Edge(
+				transition,
+				exits.toArray(new StateContainer[exits.size()]),
+				entries.toArray(new StateContainer[entries.size()])
+			);
+		}
+	}
+
+	/*
+		Shortest paths through the states, for transitionTo. The next hop
+		from every state towards a target is found with a single breadth
+		first search backwards from that target, the first time the target
+		is needed. The whole thing is thrown away when the graph changes.
+	 */
+	private static class Paths {
+		private static final int NONE = -1;
+
+		private final StateContainer[] byId;
+		private final int[][] predecessors;
+		private final int[][] nextHops;
+
+		Paths(Collection<StateContainer> states) {
+			byId = new StateContainer[states.size()];
+			predecessors = new int[states.size()][];
+			nextHops = new int[states.size()][];
+
+			int[] counts = new int[states.size()];
+
+			for (StateContainer s : states) {
+				byId[s.id] = s;
+
+				// including the transitions inherited from enclosing states
+				for (StateContainer from = s; from != null; from = from.parent) {
+					for (StateContainer to : from.transitions.keySet()) {
+						counts[to.id] += 1;
+					}
+				}
+			}
+
+			for (int i=0; i < counts.length; ++i) {
+				predecessors[i] = new int[counts[i]];
+			}
+
+			for (StateContainer s : states) {
+				for (StateContainer from = s; from != null; from = from.parent) {
+					for (StateContainer to : from.transitions.keySet()) {
+						predecessors[to.id][--counts[to.id]] = s.id;
+					}
+				}
+			}
+		}
+
+		StateContainer nextHop(StateContainer from, StateContainer to) {
+			if (from.id == StateContainer.UNKNOWN || to.id == StateContainer.UNKNOWN) {
+				return null;
+			}
+
+			if (nextHops[to.id] == null) {
+				nextHops[to.id] = search(to.id);
+			}
+
+			int hop = nextHops[to.id][from.id];
+			return hop != NONE ? byId[hop] : null;
+		}
+
+		private int[] search(int target) {
+			int[] next = new int[byId.length];
+			Arrays.fill(next, NONE);
+
+			int[] queue = new int[byId.length];
+			int head = 0, tail = 0;
+
+			queue[tail++] = target;
+			next[target] = target;
+
+			while (head < tail) {
+				int current = queue[head++];
+
+				for (int previous : predecessors[current]) {
+					if (next[previous] == NONE) {
+						next[previous] = current;
+						queue[tail++] = previous;
+					}
+				}
+			}
+
+			return next;
+		}
+	}
+
+	private static class PatternMatcher {
+		private final Object[] pattern;
 		private final SequenceHandler handler;
 
-		PatternMatcher(Pattern<T> pattern, SequenceHandler handler) {
-			this.pattern = pattern;
+		PatternMatcher(Pattern<?> pattern, SequenceHandler handler) {
+			this.pattern = pattern.pattern().toArray();
 			this.handler = handler;
 		}
+	}
 
-		Optional<List<T>> matches(List<StateContainer> states) {
-			List<T> matches = new ArrayList<>();
-			List<Object> patternStates = this.pattern.pattern();
+	/*
+		The most recent states, kept in a ring buffer which is just large
+		enough for the longest pattern. Matches are handed to the sequence
+		handlers as a read-only view over the buffer, which is reused from
+		one match to the next.
+	 */
+	private static class RecentStates {
+		private StateContainer[] buffer = new StateContainer[1];
+		private int start = 0;
+		private int size = 0;
+		private final Window window = new Window();
+
+		void add(StateContainer state) {
+			if (size == buffer.length) {
+				buffer[start] = state;
+				start = (start + 1) % buffer.length;
+			} else {
+				buffer[(start + size) % buffer.length] = state;
+				size += 1;
+			}
+		}
 
-			for (int i = patternStates.size() - 1; i >= 0; --i) {
-				int j = states.size() - (patternStates.size() - i);
+		void removeOldest() {
+			if (size != 0) {
+				buffer[start] = null;
+				start = (start + 1) % buffer.length;
+				size -= 1;
+			}
+		}
 
-				if (j < 0) {
-					return Optional.empty();
-				}
+		void clear() {
+			Arrays.fill(buffer, null);
+			start = 0;
+			size = 0;
+		}
+
+		// keeps the newest states which will fit
+		void resize(int capacity) {
+			capacity = Math.max(capacity, 1);
+
+			if (capacity == buffer.length) {
+				return;
+			}
+
+			StateContainer[] resized = new StateContainer[capacity];
+			int kept = Math.min(size, capacity);
+
+			for (int i=0; i < kept; ++i) {
+				resized[i] = get(size - kept + i);
+			}
+
+			buffer = resized;
+			start = 0;
+			size = kept;
+		}
+
+		// the i-th oldest state
+		StateContainer get(int i) {
+			return buffer[(start + i) % buffer.length];
+		}
+
+		boolean matches(Object[] pattern) {
+			int offset = size - pattern.length;
 
-				Object matchState = patternStates.get(i);
-				State recentState = states.get(j).state;
+			if (offset < 0) {
+				return false;
+			}
+
+			for (int i = pattern.length - 1; i >= 0; --i) {
+				Object matchState = pattern[i];
+				Object recentState = get(offset + i).value;
 
 				if (PatternBuilder.isWildcard(matchState)) {
 					// nothing, do no state checking
 				} else if (matchState == null) {
 					if (recentState != null) {
-						return Optional.empty();
+						return false;
 					}
 				} else if (recentState == null) {
-					return Optional.empty();
+					return false;
 				} else if (!matchState.equals(recentState)) {
-					return Optional.empty();
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		List<Object> window(int length) {
+			window.length = length;
+			return window;
+		}
+
+		/*
+			Only valid for the duration of the call to the sequence handler,
+			after which it will move along with the buffer.
+		 */
+		private class Window extends AbstractList<Object> implements RandomAccess {
+			int length;
+
+			@Override
+			public Object get(int index) {
+				if (index < 0 || index >= length) {
+					throw new IndexOutOfBoundsException("index: "+index+", size: "+length);
 				}
 
-				@SuppressWarnings("unchecked")
-				T recentState_ = (T) recentState;
-				matches.add(recentState_);
+				return RecentStates.this.get(size - length + index).value;
 			}
 
-			Collections.reverse(matches);
-			return Optional.of(matches);
+			@Override
+			public int size() {
+				return length;
+			}
 		}
 	}
 
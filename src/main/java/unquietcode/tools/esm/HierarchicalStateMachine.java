@@ -0,0 +1,52 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.List;
+
+/**
+ * A state machine whose states can enclose other states.
+ *
+ * @version 10-18-2026
+ */
+public interface HierarchicalStateMachine<T> {
+
+	/**
+	 * Makes the given states substates of the parent state. While in a substate,
+	 * the state machine is also in each of its enclosing states, and so can take
+	 * any of their transitions as well. A transition exits states up to the
+	 * innermost state which encloses both ends of the transition, calling their
+	 * exit handlers from the inside out, and then enters states down to the next
+	 * state, calling their entry handlers from the outside in.
+	 *
+	 * When the state machine is modified, this method will return
+	 * true and the state machine will be reset.
+	 *
+	 * @param parentState the enclosing state
+	 * @param substates the states to enclose
+	 * @return true if the state machine was modified, false otherwise
+	 * @throws IllegalArgumentException if a state already has another parent, or would enclose itself
+	 */
+	boolean addSubstates(T parentState, List<T> substates);
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+/**
+ * A {@link StateHandler} which does not need to run in order with the
+ * other handlers of a transition. Independent handlers are dispatched to
+ * the common {@link java.util.concurrent.ForkJoinPool}, or to the executor
+ * given to {@link GenericStateMachine#setIndependentExecutor}, and the
+ * transition waits for them to complete before it is committed.
+ *
+ * Since the transition waits on its independent handlers, they cannot call
+ * {@link StateMachine#transition(Object)} on their own state machine, which
+ * throws a {@link TransitionException}. Use {@link StateMachine#transitionAsync(Object)}
+ * instead.
+ *
+ * @version 10-18-2026
+ */
+@FunctionalInterface
+public interface IndependentStateHandler<T> extends StateHandler<T> {
+	// nothing for now
+}
@@ -24,16 +24,48 @@
 package unquietcode.tools.esm;
 
 public class ParseException extends Exception {
+	private final int line;
+	private final int column;
 
 	public ParseException(String message) {
 		super(message);
+		this.line = -1;
+		this.column = -1;
 	}
 
 	public ParseException(Throwable cause) {
 		super(cause);
+		this.line = -1;
+		this.column = -1;
 	}
 
 	public ParseException(String message, Throwable cause) {
 		super(message, cause);
+		this.line = -1;
+		this.column = -1;
+	}
+
+	public ParseException(String message, int line, int column) {
+		this(message, line, column, null);
+	}
+
+	public ParseException(String message, int line, int column, Throwable cause) {
+		super(message+" (line "+line+", column "+column+")", cause);
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * @return the line where the error occurred, starting from 1, or -1 if unknown
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the column where the error occurred, starting from 1, or -1 if unknown
+	 */
+	public int getColumn() {
+		return column;
 	}
 }
\ No newline at end of file
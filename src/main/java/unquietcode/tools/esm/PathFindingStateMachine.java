@@ -0,0 +1,60 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.concurrent.Future;
+
+/**
+ * A state machine which can find its own way to a state, rather than
+ * being told each transition to take along the way.
+ *
+ * @version 10-18-2026
+ */
+public interface PathFindingStateMachine<T> {
+
+	/**
+	 * Transition the state machine to the target state, passing through as
+	 * few states as possible along the way. The whole path is performed as
+	 * a single queued transition, with the usual callbacks and routing for
+	 * each hop. If a router redirects a hop, the rest of the path is planned
+	 * again from there.
+	 *
+	 * @param target the state to end up in
+	 * @return true if moved to another state, false if already in the target state
+	 *
+	 * @throws TransitionException if there is no path to the target
+	 */
+	boolean transitionTo(T target) throws TransitionException;
+
+	/**
+	 * Transition the state machine to the target state asynchronously,
+	 * as with {@link #transitionTo(Object)}. The path is planned once the
+	 * transitions before it have been completed.
+	 *
+	 * @param target the state to end up in
+	 * @return a future which will resolve when the target is reached
+	 * @throws TransitionException
+	 */
+	Future<Boolean> transitionToAsync(T target) throws TransitionException;
+}
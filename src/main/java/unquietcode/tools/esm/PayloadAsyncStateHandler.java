@@ -0,0 +1,50 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An {@link AsyncStateHandler} which also receives the payload of the
+ * transition, as with {@link PayloadStateHandler}.
+ *
+ * @version 10-18-2026
+ */
+@FunctionalInterface
+public interface PayloadAsyncStateHandler<T, P> extends AsyncStateHandler<T> {
+
+	/**
+	 * Handle the state, completing the returned stage when done.
+	 *
+	 * @param state the state being entered or exited
+	 * @param payload the payload of the transition, or null if none
+	 * @return a stage which completes when the handler is finished
+	 */
+	CompletionStage<Void> onStateAsync(T state, P payload);
+
+	@Override
+	default CompletionStage<Void> onStateAsync(T state) {
+		return onStateAsync(state, null);
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+/**
+ * A {@link StateHandler} which also receives the payload of the transition,
+ * as passed to {@link PayloadStateMachine#transition(Object, Object)}.
+ * The payload is null for transitions which were made without one.
+ *
+ * The payload is not checked against the handler's type, so every
+ * transition which carries one should carry the same kind of payload.
+ *
+ * @version 10-18-2026
+ */
+@FunctionalInterface
+public interface PayloadStateHandler<T, P> extends StateHandler<T> {
+
+	/**
+	 * Handle the state.
+	 *
+	 * @param state the state being entered or exited
+	 * @param payload the payload of the transition, or null if none
+	 */
+	void onState(T state, P payload);
+
+	@Override
+	default void onState(T state) {
+		onState(state, null);
+	}
+}
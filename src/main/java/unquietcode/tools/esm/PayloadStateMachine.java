@@ -0,0 +1,62 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.concurrent.Future;
+
+/**
+ * A state machine which can carry a payload along with a transition,
+ * for the handlers and routers which accept one.
+ *
+ * @version 10-18-2026
+ */
+public interface PayloadStateMachine<T> {
+
+	/**
+	 * Transition the state machine to the next state, passing the payload
+	 * along to every {@link PayloadStateHandler}, {@link PayloadTransitionHandler},
+	 * their asynchronous counterparts {@link PayloadAsyncStateHandler} and
+	 * {@link PayloadAsyncTransitionHandler}, and every
+	 * {@link unquietcode.tools.esm.routing.PayloadStateRouter} involved.
+	 * Other handlers and routers are called as usual.
+	 *
+	 * @param state to transition to
+	 * @param payload to pass to the handlers and routers
+	 * @return true if moved to another state, false if continuing on the same state
+	 *
+	 * @throws TransitionException if a violation of the available transitions occurs
+	 */
+	boolean transition(T state, Object payload) throws TransitionException;
+
+	/**
+	 * Transition the state machine to the next state asynchronously,
+	 * passing the payload along as with {@link #transition(Object, Object)}.
+	 *
+	 * @param state to transition to
+	 * @param payload to pass to the handlers and routers
+	 * @return a future which will resolve when the transition occurs
+	 * @throws TransitionException
+	 */
+	Future<Boolean> transitionAsync(T state, Object payload) throws TransitionException;
+}
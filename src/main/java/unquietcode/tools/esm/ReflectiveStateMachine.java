@@ -23,9 +23,14 @@
 
 package unquietcode.tools.esm;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -70,16 +75,26 @@ public abstract class ReflectiveStateMachine extends StringStateMachine {
 	}
 
 	private void init() {
-		discoverMethods();
+		for (Binding binding : BINDINGS.get(getClass())) {
+			bind(binding);
+		}
+
 		declareTransitions();
 	}
 
-	private void discoverMethods() {
+	// the handler methods of each class, which only need to be discovered once
+	private static final ClassValue<Binding[]> BINDINGS = new ClassValue<Binding[]>() {
+		protected @Override Binding[] computeValue(Class<?> type) {
+			return discoverMethods(type);
+		}
+	};
+
+	private static Binding[] discoverMethods(Class<?> type) {
 
 		// build a map, ensure no duplicate names
 		Map<String, Method> methodMap = new HashMap<String, Method>();
 
-		for (Method method : this.getClass().getDeclaredMethods()) {
+		for (Method method : type.getDeclaredMethods()) {
 			String name = method.getName();
 
 			if (methodMap.containsKey(name)) {
@@ -89,47 +104,133 @@ public abstract class ReflectiveStateMachine extends StringStateMachine {
 			methodMap.put(name, method);
 		}
 
-		// iterate the map, adding callbacks to parent
+		// iterate the map, resolving the callbacks
+		List<Binding> bindings = new ArrayList<Binding>();
+
 		for (Map.Entry<String, Method> entry : methodMap.entrySet()) {
 			Method method = entry.getValue();
 			String name = method.getName().toLowerCase();
 
 			if ("onentering".equals(name)) {
-				super.onEntering(createOnStateInvoker(method));
+				bindings.add(new Binding(Binding.ENTERING, null, createInvoker(method, 1)));
 			}
 
 			else if ("onexiting".equals(name)) {
-				super.onExiting(createOnStateInvoker(method));
+				bindings.add(new Binding(Binding.EXITING, null, createInvoker(method, 1)));
 			}
 
 			else if ("ontransition".equals(name)) {
-				super.onTransition(createOnTransitionInvoker(method));
+				bindings.add(new Binding(Binding.TRANSITION, null, createInvoker(method, 2)));
 			}
 
 			else if (name.startsWith("onentering")) {
 				String state = name.substring("onentering".length());
-				super.onEntering(state, createOnStateInvoker(method));
+				bindings.add(new Binding(Binding.ENTERING, state, createInvoker(method, 1)));
 			}
 
 			else if (name.startsWith("onexiting")) {
 				String state = name.substring("onexiting".length());
-				super.onExiting(state, createOnStateInvoker(method));
+				bindings.add(new Binding(Binding.EXITING, state, createInvoker(method, 1)));
 			}
 
 			else if (name.startsWith("on")) {
 				String state = name.substring("on".length());
-				super.onEntering(state, createOnStateInvoker(method));
+				bindings.add(new Binding(Binding.ENTERING, state, createInvoker(method, 1)));
 			}
 		}
+
+		return bindings.toArray(new Binding[bindings.size()]);
 	}
 
-	private RuntimeException convertException(Exception ex) {
-		Throwable t;
+	private void bind(Binding binding) {
+		switch (binding.kind) {
+			case Binding.ENTERING:
+				if (binding.state == null) {
+					super.onEntering(createOnStateInvoker(binding.invoker));
+				} else {
+					super.onEntering(binding.state, createOnStateInvoker(binding.invoker));
+				}
+				break;
 
-		if (ex instanceof InvocationTargetException) {
-			t = ((InvocationTargetException) ex).getTargetException();
-		} else {
-			t = ex;
+			case Binding.EXITING:
+				if (binding.state == null) {
+					super.onExiting(createOnStateInvoker(binding.invoker));
+				} else {
+					super.onExiting(binding.state, createOnStateInvoker(binding.invoker));
+				}
+				break;
+
+			case Binding.TRANSITION:
+				super.onTransition(createOnTransitionInvoker(binding.invoker));
+				break;
+		}
+	}
+
+	/*
+		A handler method which has been resolved for a class, and
+		which is bound to each new instance of that class.
+	 */
+	private static class Binding {
+		static final int ENTERING = 0;
+		static final int EXITING = 1;
+		static final int TRANSITION = 2;
+
+		final int kind;
+		final String state;
+		final MethodHandle invoker;
+
+		Binding(int kind, String state, MethodHandle invoker) {
+			this.kind = kind;
+			this.state = state;
+			this.invoker = invoker;
+		}
+	}
+
+	// every invoker takes the machine and both states, whether the method uses them or not
+	private static final MethodType INVOKER_TYPE
+		= MethodType.methodType(void.class, ReflectiveStateMachine.class, String.class, String.class);
+
+	/*
+		Adapts the method to the invoker type once, so that calling it is
+		a direct invocation rather than a reflective one.
+	 */
+	private static MethodHandle createInvoker(Method method, int maxArguments) {
+		int arguments = method.getParameterCount();
+
+		if (arguments > maxArguments) {
+			throw new IllegalStateException(
+				"expected at most "+maxArguments+" arguments for method '"+method.getName()+"'"
+			);
+		}
+
+		try {
+			method.setAccessible(true);
+		} catch (RuntimeException ex) {
+			// keep to the normal access checks
+		}
+
+		MethodHandle handle;
+
+		try {
+			handle = MethodHandles.lookup().unreflect(method);
+		} catch (IllegalAccessException ex) {
+			throw new RuntimeException(ex);
+		}
+
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, ReflectiveStateMachine.class);
+		}
+
+		List<Class<?>> declared = INVOKER_TYPE.parameterList().subList(0, arguments + 1);
+		List<Class<?>> dropped = INVOKER_TYPE.parameterList().subList(arguments + 1, INVOKER_TYPE.parameterCount());
+
+		handle = handle.asType(MethodType.methodType(void.class, declared));
+		return MethodHandles.dropArguments(handle, arguments + 1, dropped);
+	}
+
+	private static RuntimeException convertException(Throwable t) {
+		if (t instanceof Error) {
+			throw (Error) t;
 		}
 
 		if (t instanceof RuntimeException) {
@@ -139,45 +240,27 @@ public abstract class ReflectiveStateMachine extends StringStateMachine {
 		}
 	}
 
-	private StateHandler<String> createOnStateInvoker(final Method m) {
+	private StateHandler<String> createOnStateInvoker(final MethodHandle invoker) {
 		return new StateHandler<String>() {
 			public void onState(String state) {
-				int arguments = m.getParameterTypes().length;
-
 				try {
-					if (arguments == 0) {
-						m.invoke(ReflectiveStateMachine.this);
-					} else if (arguments == 1) {
-						m.invoke(ReflectiveStateMachine.this, state);
-					} else {
-						throw new IllegalStateException("expected 0 or 1 arguments");
-					}
-				} catch (Exception ex) {
-					throw convertException(ex);
+					invoker.invokeExact(ReflectiveStateMachine.this, state, (String) null);
+				} catch (Throwable t) {
+					throw convertException(t);
 				}
 			}
 		};
 	}
 
-	private TransitionHandler<String> createOnTransitionInvoker(final Method m) {
+	private TransitionHandler<String> createOnTransitionInvoker(final MethodHandle invoker) {
 		return new TransitionHandler<String>() {
 			public void onTransition(String from, String to) {
-				int arguments = m.getParameterTypes().length;
-
 				try {
-					if (arguments == 0) {
-						m.invoke(ReflectiveStateMachine.this);
-					} else if (arguments == 1) {
-						m.invoke(ReflectiveStateMachine.this, from);
-					} else if (arguments == 2) {
-						m.invoke(ReflectiveStateMachine.this, from, to);
-					} else {
-						throw new IllegalStateException("expected 0, 1, or 2 arguments");
-					}
-				} catch (Exception ex) {
-					throw convertException(ex);
+					invoker.invokeExact(ReflectiveStateMachine.this, from, to);
+				} catch (Throwable t) {
+					throw convertException(t);
 				}
 			}
 		};
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * A state machine which can schedule a transition for later.
+ *
+ * @version 10-18-2026
+ */
+public interface SchedulingStateMachine<T> {
+
+	/**
+	 * Transition the state machine to the next state once the delay has elapsed.
+	 * The transition is queued along with the others when its time comes. It is
+	 * cancelled if the state machine transitions to another state or is reset
+	 * in the meantime, as is the returned future. Transitioning from a state back
+	 * to itself does not cancel it.
+	 *
+	 * @param state to transition to
+	 * @param delay how long to wait before transitioning
+	 * @return a future which will resolve when the transition occurs, and which can be cancelled
+	 */
+	Future<Boolean> transitionAfter(T state, Duration delay);
+
+	/**
+	 * Transition the state machine to the next state at the given time, as with
+	 * {@link #transitionAfter(Object, Duration)}. A time in the past transitions
+	 * right away.
+	 *
+	 * @param state to transition to
+	 * @param when to transition
+	 * @return a future which will resolve when the transition occurs, and which can be cancelled
+	 */
+	Future<Boolean> transitionAt(T state, Instant when);
+}
@@ -0,0 +1,342 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact binary form of a state machine's definition, which can be
+ * loaded much faster than the equivalent configuration string. Only the
+ * states, the initial state, and the transitions are included.
+ *
+ * The format is:
+ * <pre>
+ *   magic      4 bytes, "JSMB"
+ *   version    varint
+ *   states     varint count, then for each state a varint of the length
+ *              of its UTF-8 encoded name plus one (0 for the null state)
+ *              followed by the name
+ *   initial    varint index into the states
+ *   edges      for each state, a varint count followed by the
+ *              delta encoded indices of the states it leads to
+ * </pre>
+ *
+ * A definition is loaded by resolving each name only once, after which the
+ * transitions are added in bulk, with a single reset at the end.
+ *
+ * @version 10-18-2026
+ */
+public final class StateMachineBinaryFormat {
+	private StateMachineBinaryFormat() { }
+
+	public static final int VERSION = 1;
+	private static final byte[] MAGIC = { 'J', 'S', 'M', 'B' };
+
+	/**
+	 * Writes the definition of the state machine to the stream.
+	 * The stream is flushed but not closed.
+	 *
+	 * @param stateMachine a state machine provided by this library
+	 * @param stream to write to
+	 * @throws IOException if the definition could not be written
+	 * @throws IllegalArgumentException if the state machine is not supported
+	 */
+	public static void writeStateMachine(StateMachine<?> stateMachine, OutputStream stream) throws IOException {
+		final Graph graph;
+
+		if (stateMachine instanceof GenericStateMachine) {
+			graph = ((GenericStateMachine<?>) stateMachine).exportGraph();
+		} else if (stateMachine instanceof WrappedStateMachine) {
+			graph = ((WrappedStateMachine<?, ?>) stateMachine).exportGraph();
+		} else {
+			throw new IllegalArgumentException("unsupported state machine: "+stateMachine.getClass().getName());
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.write(MAGIC);
+		writeVarInt(out, VERSION);
+		writeVarInt(out, graph.names.length);
+
+		for (String name : graph.names) {
+			if (name == null) {
+				writeVarInt(out, 0);
+			} else {
+				byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(out, bytes.length + 1);
+				out.write(bytes);
+			}
+		}
+
+		writeVarInt(out, graph.initial);
+
+		for (int[] edges : graph.adjacency) {
+			writeVarInt(out, edges.length);
+			int previous = 0;
+
+			for (int edge : edges) {
+				writeVarInt(out, edge - previous);
+				previous = edge;
+			}
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * @see #writeStateMachine(StateMachine, OutputStream)
+	 */
+	public static byte[] writeStateMachine(StateMachine<?> stateMachine) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			writeStateMachine(stateMachine, bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Adds the states and transitions of a binary definition to the state
+	 * machine, and sets its initial state. The existing information is
+	 * preserved. When the operation is complete, the state machine is reset.
+	 *
+	 * @param clazz the type of the states
+	 * @param definition as written by {@link #writeStateMachine(StateMachine)}
+	 * @param stateMachine to configure
+	 * @throws StreamCorruptedException if the definition is malformed
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, byte[] definition, T stateMachine) throws StreamCorruptedException {
+		configure(clazz, ByteBuffer.wrap(definition), stateMachine);
+	}
+
+	/**
+	 * Reads the rest of the stream as a binary definition.
+	 * The stream is not closed.
+	 *
+	 * @see #configureStateMachine(Class, byte[], FactoryStateMachine)
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, InputStream stream, T stateMachine) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+
+		for (int read = stream.read(chunk); read != -1; read = stream.read(chunk)) {
+			bytes.write(chunk, 0, read);
+		}
+
+		configureStateMachine(clazz, bytes.toByteArray(), stateMachine);
+	}
+
+	/**
+	 * Reads a binary definition from a file, which is memory mapped.
+	 *
+	 * @see #configureStateMachine(Class, byte[], FactoryStateMachine)
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, Path file, T stateMachine) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			configure(clazz, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), stateMachine);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configure(Class<V> clazz, ByteBuffer in, T stateMachine) throws StreamCorruptedException {
+		final Graph graph;
+
+		try {
+			graph = read(in);
+		} catch (BufferUnderflowException e) {
+			throw new StreamCorruptedException("unexpected end of definition");
+		}
+
+		stateMachine.setType(clazz);
+		List<V> states = new ArrayList<>(graph.names.length);
+
+		// each name is only resolved once
+		for (String name : graph.names) {
+			states.add(name != null ? stateMachine.getState(name) : null);
+		}
+
+		importGraph(stateMachine, states, graph.initial, graph.adjacency);
+	}
+
+	/*
+		Adds all of the transitions at once, with a single reset at the end,
+		where the state machine allows it. Also used by the string parser.
+	 */
+	@SuppressWarnings("unchecked")
+	static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void importGraph(T stateMachine, List<V> states, int initial, int[][] adjacency) {
+		if (stateMachine instanceof GenericStateMachine) {
+			((GenericStateMachine) stateMachine).importGraph(states, initial, adjacency);
+		} else if (stateMachine instanceof WrappedStateMachine) {
+			((WrappedStateMachine<?, V>) stateMachine).importGraph(states, initial, adjacency);
+		}
+
+		// otherwise fall back to the public interface
+		else {
+			if (initial >= 0) {
+				stateMachine.setInitialState(states.get(initial));
+			}
+
+			for (int i=0; i < states.size(); ++i) {
+				List<V> to = new ArrayList<>(adjacency[i].length);
+
+				for (int j : adjacency[i]) {
+					to.add(states.get(j));
+				}
+
+				stateMachine.addTransitions(states.get(i), to);
+			}
+		}
+	}
+
+	private static Graph read(ByteBuffer in) throws StreamCorruptedException {
+		byte[] magic = new byte[MAGIC.length];
+		in.get(magic);
+
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new StreamCorruptedException("not a state machine definition");
+		}
+
+		int version = readVarInt(in);
+
+		if (version != VERSION) {
+			throw new StreamCorruptedException("unsupported version "+version);
+		}
+
+		// every state takes at least two bytes, for its name and its edges
+		int count = readVarInt(in);
+
+		if (count < 0 || count > in.remaining() / 2) {
+			throw new StreamCorruptedException("invalid state count: "+count);
+		}
+
+		String[] names = new String[count];
+		byte[] scratch = new byte[64];
+
+		for (int i=0; i < count; ++i) {
+			int length = readVarInt(in) - 1;
+
+			if (length < 0) {
+				continue;
+			}
+
+			if (length > in.remaining()) {
+				throw new StreamCorruptedException("invalid name length: "+length);
+			}
+
+			if (length > scratch.length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+
+			in.get(scratch, 0, length);
+			names[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		int initial = index(readVarInt(in), count);
+		int[][] adjacency = new int[count][];
+
+		for (int i=0; i < count; ++i) {
+			int edgeCount = readVarInt(in);
+
+			if (edgeCount < 0 || edgeCount > count || edgeCount > in.remaining()) {
+				throw new StreamCorruptedException("invalid edge count: "+edgeCount);
+			}
+
+			int[] edges = new int[edgeCount];
+			int previous = 0;
+
+			for (int j=0; j < edges.length; ++j) {
+				previous = index(previous + readVarInt(in), count);
+				edges[j] = previous;
+			}
+
+			adjacency[i] = edges;
+		}
+
+		return new Graph(names, initial, adjacency);
+	}
+
+	private static int index(int index, int count) throws StreamCorruptedException {
+		if (index < 0 || index >= count) {
+			throw new StreamCorruptedException("state index out of range: "+index);
+		}
+
+		return index;
+	}
+
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(ByteBuffer in) throws StreamCorruptedException {
+		int value = 0;
+
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new StreamCorruptedException("malformed varint");
+	}
+
+	/*
+		The states of a state machine by id, and the ids of
+		the states which each one can transition to.
+	 */
+	static final class Graph {
+		final String[] names;
+		final int initial;
+		final int[][] adjacency;
+
+		Graph(String[] names, int initial, int[][] adjacency) {
+			this.names = names;
+			this.initial = initial;
+			this.adjacency = adjacency;
+		}
+	}
+}
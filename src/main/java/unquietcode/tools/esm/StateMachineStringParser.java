@@ -23,19 +23,51 @@
 
 package unquietcode.tools.esm;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author  Benjamin Fagin
  * @version 07-06-2013
  */
 public class StateMachineStringParser<V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>> {
-	private final StringBuilder buffer;
+	private static final int END = -1;
+	private static final int CHUNK_SIZE = 8192;
+
+	// the characters being parsed, refilled from the source when it is streamed
+	private final CharBuffer buffer;
+	private final Readable source;
 	private final T stateMachine;
 
-	private StateMachineStringParser(StringBuilder buffer, T stateMachine) {
+	// the position of the cursor, for error reporting
+	private int line = 1;
+	private int column = 1;
+
+	private final StringBuilder name = new StringBuilder();
+
+	// the states in the order they were first seen, and the targets of each
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<V> states = new ArrayList<>();
+	private int[][] targets = new int[16][];
+	private int[] targetCounts = new int[16];
+
+	private StateMachineStringParser(CharBuffer buffer, Readable source, T stateMachine) {
 		this.buffer = buffer;
+		this.source = source;
 		this.stateMachine = stateMachine;
 	}
 
@@ -46,6 +78,7 @@ public class StateMachineStringParser<V, T extends FactoryStateMachine<V> & Prog
 	 * Listing empty sets is optional. Can also add the initial state to the front like so:
 	 * "initial | state1 : {transition1, transition2} | state2 : {transition3, transition4}"
 	 *
+	 * Entries can be separated by either ',' or '|'.
 	 * The states are the class strings of the enums being used. They will be processed via reflection.
 	 * The existing information is preserved; create a new state machine instead to avoid that.
 	 * When the operation is complete, the state machine is reset.
@@ -56,198 +89,359 @@ public class StateMachineStringParser<V, T extends FactoryStateMachine<V> & Prog
 
 	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
 	void configureStateMachine(Class<V> clazz, String string, T stateMachine) throws ParseException {
-		configure(clazz, new StringBuilder(string), stateMachine);
+		configure(clazz, CharBuffer.wrap(string), stateMachine);
 	}
 
 	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
 	void configureStateMachine(Class<V> clazz, StringBuilder buffer, T stateMachine) throws ParseException {
-		configure(clazz, new StringBuilder(buffer), stateMachine);
+		configure(clazz, CharBuffer.wrap(buffer), stateMachine);
+	}
+
+	/**
+	 * Configures the state machine from a stream of characters, in the same
+	 * format as {@link #configureStateMachine(Class, String, FactoryStateMachine)}.
+	 * The transitions are added together once all of them have been read, so
+	 * a malformed configuration leaves the state machine as it was. The reader
+	 * is not closed.
+	 *
+	 * @param   reader   source of the configuration
+	 * @throws  ParseException  if the configuration is malformed
+	 * @throws  IOException  if the configuration could not be read
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, Reader reader, T stateMachine) throws ParseException, IOException {
+		CharBuffer buffer = CharBuffer.allocate(CHUNK_SIZE);
+		buffer.flip();
+		configure(clazz, buffer, reader, stateMachine);
+	}
+
+	/**
+	 * Configures the state machine from a stream of UTF-8 encoded characters.
+	 * The stream is not closed.
+	 *
+	 * @see #configureStateMachine(Class, InputStream, Charset, FactoryStateMachine)
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, InputStream stream, T stateMachine) throws ParseException, IOException {
+		configureStateMachine(clazz, stream, StandardCharsets.UTF_8, stateMachine);
+	}
+
+	/**
+	 * Configures the state machine from a stream of encoded characters.
+	 * The stream is not closed.
+	 *
+	 * @see #configureStateMachine(Class, Reader, FactoryStateMachine)
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, InputStream stream, Charset charset, T stateMachine) throws ParseException, IOException {
+		configureStateMachine(clazz, new InputStreamReader(stream, charset.newDecoder()), stateMachine);
+	}
+
+	/**
+	 * Configures the state machine from a UTF-8 encoded file.
+	 *
+	 * @see #configureStateMachine(Class, Path, Charset, FactoryStateMachine)
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, Path file, T stateMachine) throws ParseException, IOException {
+		configureStateMachine(clazz, file, StandardCharsets.UTF_8, stateMachine);
+	}
+
+	/**
+	 * Configures the state machine from a file. The file is memory mapped
+	 * and decoded a chunk at a time, so that it is never held in memory
+	 * as a whole.
+	 *
+	 * @param   file     the configuration file
+	 * @param   charset  the encoding of the file
+	 * @throws  ParseException  if the configuration is malformed
+	 * @throws  IOException  if the file could not be read
+	 */
+	public static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configureStateMachine(Class<V> clazz, Path file, Charset charset, T stateMachine) throws ParseException, IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			// too large to map in one go
+			if (channel.size() > Integer.MAX_VALUE) {
+				try (Reader reader = Files.newBufferedReader(file, charset)) {
+					configureStateMachine(clazz, reader, stateMachine);
+					return;
+				}
+			}
+
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CharBuffer buffer = CharBuffer.allocate(CHUNK_SIZE);
+			buffer.flip();
+
+			configure(clazz, buffer, new MappedSource(bytes, charset.newDecoder()), stateMachine);
+		}
 	}
 
 	private static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
-	void configure(Class<V> clazz, StringBuilder buffer, T stateMachine) throws ParseException {
-		StateMachineStringParser<V, T> parser = new StateMachineStringParser<V, T>(buffer, stateMachine);
+	void configure(Class<V> clazz, CharBuffer input, T stateMachine) throws ParseException {
+		StateMachineStringParser<V, T> parser = new StateMachineStringParser<V, T>(input, null, stateMachine);
 		stateMachine.setType(clazz);
 		parser.build();
 	}
 
+	private static <V, T extends FactoryStateMachine<V> & ProgrammableStateMachine<V>>
+	void configure(Class<V> clazz, CharBuffer buffer, Readable source, T stateMachine) throws ParseException, IOException {
+		StateMachineStringParser<V, T> parser = new StateMachineStringParser<V, T>(buffer, source, stateMachine);
+		stateMachine.setType(clazz);
+
+		try {
+			parser.build();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
 	//---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---//
 
-	@SuppressWarnings("unchecked")
+	/*
+		Reads all of the entries before touching the state machine, so that
+		the transitions can be added in one go with a single reset.
+	 */
 	private T build() throws ParseException {
+		int initial = -1;
 		eatWhiteSpace();
 
-		String initialString = getString(Token.DIVIDER);
-		if (initialString != null) {
-			stateMachine.setInitialState(instantiate(initialString));
-		}
-
-		while (!isEmpty()) {
-			String name = getString(Token.NAME_END);
-			chomp(Token.SET_START);
-			String elements[] = getStrings(Token.SET_END, Token.COMMA);
-			chomp(Token.DIVIDER);
+		if (peek() != END) {
+			int state = getStateId();
+			eatWhiteSpace();
 
-			if (name == null || elements == null) {
-				throw new ParseException("Malformed configuration string.");
+			// a name followed by a divider is the initial state
+			if (peek() == Token.DIVIDER.value) {
+				initial = state;
+				next();
+				eatWhiteSpace();
+				state = peek() != END ? getStateId() : -1;
 			}
 
-			V from = instantiate(name);
+			while (state != -1) {
+				getSet(state);
+
+				// entries are separated by a divider or a comma
+				eatWhiteSpace();
+				int c = peek();
 
-			for (String _to : elements) {
-				V to = instantiate(_to);
-				stateMachine.addTransition(from, to);
+				if (c == Token.DIVIDER.value || c == Token.COMMA.value) {
+					next();
+					eatWhiteSpace();
+				}
+
+				state = peek() != END ? getStateId() : -1;
 			}
 		}
 
+		int[][] adjacency = new int[states.size()][];
+
+		for (int i=0; i < adjacency.length; ++i) {
+			adjacency[i] = targets[i] != null ? Arrays.copyOf(targets[i], targetCounts[i]) : new int[0];
+		}
+
+		StateMachineBinaryFormat.importGraph(stateMachine, states, initial, adjacency);
 		return stateMachine;
 	}
 
-	// TODO get rid of this with smarter parsing
-	private boolean isEmpty() {
-		// I hope the string is put on the stack for immediate collection.
-		return buffer.toString().trim().length() == 0;
-	}
+	// reads ': { a, b, c }', adding each as a target of the state
+	private void getSet(int from) throws ParseException {
+		chomp(Token.NAME_END);
+		chomp(Token.SET_START);
+		eatWhiteSpace();
 
-	private void chomp(Token token) {
-		match(token);
-	}
+		if (peek() == Token.SET_END.value) {
+			next();
+			return;
+		}
 
-	private String getString(Token token) {
-		return match(token);
-	}
+		while (true) {
+			addTarget(from, getStateId());
+			eatWhiteSpace();
 
-	private Integer getInt(Token token) throws ParseException {
-		String s = getString(token);
-		if (s == null) { return null; }
+			if (peek() == Token.SET_END.value) {
+				next();
+				return;
+			}
 
-		try {
-			return Integer.parseInt(s);
-		} catch (NumberFormatException ex) {
-			throw new ParseException(ex);
+			chomp(Token.COMMA);
 		}
 	}
 
-	private Boolean getBoolean(Token token) throws ParseException {
-		String s = getString(token);
-		if (s == null) { return null; }
+	private void addTarget(int from, int to) {
+		int[] row = targets[from];
 
-		try {
-			return Boolean.parseBoolean(s);
-		} catch (Exception ex) {
-			throw new ParseException(ex);
+		if (row == null) {
+			row = targets[from] = new int[4];
+		} else if (targetCounts[from] == row.length) {
+			row = targets[from] = Arrays.copyOf(row, row.length * 2);
 		}
+
+		row[targetCounts[from]++] = to;
 	}
 
-	private Double getDouble(Token token) throws ParseException {
-		String s = getString(token);
-		if (s == null) { return null; }
+	private void chomp(Token token) throws ParseException {
+		eatWhiteSpace();
 
-		try {
-			return Double.parseDouble(s);
-		} catch (NumberFormatException ex) {
-			throw new ParseException(ex);
+		if (peek() != token.value) {
+			throw error("expected '"+token.value+"'");
 		}
+
+		next();
 	}
 
-	private String[] getStrings(Token token, Token delimiter) {
-		String list = match(token);
-		if (list == null) {	return null; }
-		if (list.isEmpty()) { return new String[]{}; }
+	/*
+		Reads a name up to the next token, which can contain
+		whitespace but not at either end.
+	 */
+	// reads a name, resolving it the first time it is seen
+	private int getStateId() throws ParseException {
+		eatWhiteSpace();
 
+		final int startLine = line;
+		final int startColumn = column;
 
-		String cut[] = list.split(delimiter.value+"");
-		for (int i=0; i < cut.length; ++i) {
-			cut[i] = cut[i].trim();
-		}
+		name.setLength(0);
+		int length = 0;
 
-		return cut;
-	}
+		for (int c = peek(); c != END && !isToken(c); c = peek()) {
+			name.append((char) c);
 
-	private Integer[] getInts(Token token, Token delimiter) throws ParseException {
-		String[] list = getStrings(token, delimiter);
-		if (list == null) {	return null; }
-
-		List<Integer> retval = new ArrayList<Integer>();
-		for (String s : list) {
-			Integer i;
-			try {
-				i = Integer.parseInt(s);
-			} catch (NumberFormatException ex) {
-				throw new ParseException(ex);
+			if (!Character.isWhitespace(c)) {
+				length = name.length();
 			}
 
-			retval.add(i);
+			next();
 		}
 
-		return retval.toArray(new Integer[retval.size()]);
-	}
+		name.setLength(length);
 
-	private Boolean[] getBooleans(Token token, Token delimiter) throws ParseException {
-		String[] list = getStrings(token, delimiter);
-		if (list == null) {	return null; }
-
-		List<Boolean> retval = new ArrayList<Boolean>();
-		for (String s : list) {
-			Boolean b;
-			try {
-				b = Boolean.parseBoolean(s);
-			} catch (Exception ex) {
-				throw new ParseException(ex);
-			}
+		if (length == 0) {
+			throw error("expected a state name");
+		}
 
-			retval.add(b);
+		String key = name.toString();
+		Integer id = ids.get(key);
+
+		if (id != null) {
+			return id;
 		}
 
-		return retval.toArray(new Boolean[retval.size()]);
-	}
+		try {
+			states.add(stateMachine.getState(key));
+		} catch (RuntimeException ex) {
+			throw new ParseException("unable to resolve state '"+name+"'", startLine, startColumn, ex);
+		}
 
-	private Double[] getDoubles(Token token, Token delimiter) throws ParseException {
-		String[] list = getStrings(token, delimiter);
-		if (list == null) {	return null; }
-
-		List<Double> retval = new ArrayList<Double>();
-		for (String s : list) {
-			Double d;
-			try {
-				d = Double.parseDouble(s);
-			} catch (NumberFormatException ex) {
-				throw new ParseException(ex);
-			}
+		id = states.size() - 1;
+		ids.put(key, id);
 
-			retval.add(d);
+		if (id == targets.length) {
+			targets = Arrays.copyOf(targets, id * 2);
+			targetCounts = Arrays.copyOf(targetCounts, id * 2);
 		}
 
-		return retval.toArray(new Double[retval.size()]);
+		return id;
 	}
 
-	private V instantiate(String string) throws ParseException {
-		return stateMachine.getState(string);
+	private static boolean isToken(int c) {
+		for (Token token : TOKENS) {
+			if (c == token.value) {
+				return true;
+			}
+		}
+
+		return false;
 	}
 
 	private void eatWhiteSpace() {
-		while (true) {
-			char c = buffer.charAt(0);
+		while (peek() != END && Character.isWhitespace(peek())) {
+			next();
+		}
+	}
 
-			if (Character.isWhitespace(c)) {
-				buffer.deleteCharAt(0);
-			} else {
-				return;
-			}
+	private int peek() {
+		if (!buffer.hasRemaining() && !fill()) {
+			return END;
+		}
+
+		return buffer.get(buffer.position());
+	}
+
+	// reads the next chunk from the source, if there is one
+	private boolean fill() {
+		if (source == null) {
+			return false;
+		}
+
+		try {
+			int read;
+			buffer.clear();
+
+			do {
+				read = source.read(buffer);
+			} while (read == 0);
+
+			buffer.flip();
+			return read > 0;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
 		}
 	}
 
-	private String match(Token token) {
-		int index = buffer.indexOf(token.value+"");
-		if (index == -1) {
-			return null;
+	private void next() {
+		if (buffer.get() == '\n') {
+			line += 1;
+			column = 1;
+		} else {
+			column += 1;
 		}
+	}
 
-		String front = buffer.substring(0, index);
-		buffer.delete(0, index+1);
-		front = front.trim();
+	private ParseException error(String message) {
+		String found = peek() == END ? "end of input" : "'"+(char) peek()+"'";
+		return new ParseException(message+", found "+found, line, column);
+	}
 
-		return front;
+	private static final Token[] TOKENS = Token.values();
+
+	/*
+		Decodes the mapped bytes of a file as they are needed.
+	 */
+	private static class MappedSource implements Readable {
+		private final ByteBuffer bytes;
+		private final CharsetDecoder decoder;
+		private boolean flushed = false;
+
+		MappedSource(ByteBuffer bytes, CharsetDecoder decoder) {
+			this.bytes = bytes;
+			this.decoder = decoder;
+		}
+
+		@Override
+		public int read(CharBuffer chars) throws IOException {
+			if (flushed) {
+				return -1;
+			}
+
+			int start = chars.position();
+			check(decoder.decode(bytes, chars, true));
+
+			if (!bytes.hasRemaining()) {
+				CoderResult result = decoder.flush(chars);
+				check(result);
+				flushed = result.isUnderflow();
+			}
+
+			int read = chars.position() - start;
+			return read == 0 && flushed ? -1 : read;
+		}
+
+		private static void check(CoderResult result) throws IOException {
+			if (result.isError()) {
+				result.throwException();
+			}
+		}
 	}
 
 	public enum Token {
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-instance variables which accompany the current state of a
+ * state machine, such as counters and timestamps. Each variable is
+ * declared once, usually alongside the transitions, and is stored in a
+ * slot of a {@code long[]}, {@code int[]} or {@code Object[]} block
+ * owned by the state machine. The handle returned by the declaration
+ * reads and writes that slot directly, so primitive values are never
+ * boxed.
+ * <p>
+ * Declarations are synchronized, and add new blocks rather than
+ * reallocating the existing ones, so a variable can be declared while
+ * the state machine is running without losing values written through
+ * the other handles. The values themselves are meant to be used from
+ * handlers and routers, which run one transition at a time. They are
+ * not otherwise synchronized, so independent handlers should not write
+ * to them, and other threads may see stale values. Resetting the state
+ * machine restores every variable to its initial value.
+ *
+ * <pre>{@code
+ * LongVariable retries = esm.variables().longVariable("retries", 0);
+ * esm.onEntering(State.Retrying, state -> retries.add(1));
+ * }</pre>
+ *
+ * @version 10-18-2026
+ */
+public final class StateVariables {
+	private static final int BLOCK = 16;
+
+	private final Map<String, Object> declared = new HashMap<>();
+
+	// blocks of slots, which are never reallocated once handed out
+	private long[][] longs = new long[0][];
+	private int[][] ints = new int[0][];
+	private Object[][] objects = new Object[0][];
+
+	// the values to return to on reset, one per slot
+	private long[] initialLongs = new long[0];
+	private int[] initialInts = new int[0];
+	private Object[] initialObjects = new Object[0];
+
+	StateVariables() {
+		// package-private
+	}
+
+	/**
+	 * Declares a variable holding a {@code long}. Declaring the same
+	 * name again returns the existing variable, and its value is left
+	 * as it is.
+	 *
+	 * @param name of the variable
+	 * @param initial value, restored on reset
+	 * @return a handle for reading and writing the variable
+	 * @throws IllegalArgumentException if the name is taken by another type of variable
+	 */
+	public synchronized LongVariable longVariable(String name, long initial) {
+		LongVariable existing = existing(name, LongVariable.class);
+
+		if (existing != null) {
+			return existing;
+		}
+
+		int slot = initialLongs.length;
+		initialLongs = Arrays.copyOf(initialLongs, slot + 1);
+		initialLongs[slot] = initial;
+
+		if (slot % BLOCK == 0) {
+			longs = Arrays.copyOf(longs, longs.length + 1);
+			longs[longs.length - 1] = new long[BLOCK];
+		}
+
+		long[] block = longs[slot / BLOCK];
+		block[slot % BLOCK] = initial;
+
+		return declare(name, new LongVariable(name, block, slot % BLOCK));
+	}
+
+	/**
+	 * Declares a variable holding an {@code int}.
+	 *
+	 * @see #longVariable(String, long)
+	 */
+	public synchronized IntVariable intVariable(String name, int initial) {
+		IntVariable existing = existing(name, IntVariable.class);
+
+		if (existing != null) {
+			return existing;
+		}
+
+		int slot = initialInts.length;
+		initialInts = Arrays.copyOf(initialInts, slot + 1);
+		initialInts[slot] = initial;
+
+		if (slot % BLOCK == 0) {
+			ints = Arrays.copyOf(ints, ints.length + 1);
+			ints[ints.length - 1] = new int[BLOCK];
+		}
+
+		int[] block = ints[slot / BLOCK];
+		block[slot % BLOCK] = initial;
+
+		return declare(name, new IntVariable(name, block, slot % BLOCK));
+	}
+
+	/**
+	 * Declares a variable holding an object, which can be null.
+	 *
+	 * @see #longVariable(String, long)
+	 */
+	public synchronized <V> Variable<V> variable(String name, V initial) {
+		@SuppressWarnings("unchecked")
+		Variable<V> existing = existing(name, Variable.class);
+
+		if (existing != null) {
+			return existing;
+		}
+
+		int slot = initialObjects.length;
+		initialObjects = Arrays.copyOf(initialObjects, slot + 1);
+		initialObjects[slot] = initial;
+
+		if (slot % BLOCK == 0) {
+			objects = Arrays.copyOf(objects, objects.length + 1);
+			objects[objects.length - 1] = new Object[BLOCK];
+		}
+
+		Object[] block = objects[slot / BLOCK];
+		block[slot % BLOCK] = initial;
+
+		return declare(name, new Variable<>(name, block, slot % BLOCK));
+	}
+
+	private <Z> Z existing(String name, Class<Z> type) {
+		Object variable = declared.get(name);
+
+		if (variable == null) {
+			return null;
+		}
+
+		if (!type.isInstance(variable)) {
+			throw new IllegalArgumentException("variable '"+name+"' is already declared as a "+variable.getClass().getSimpleName());
+		}
+
+		return type.cast(variable);
+	}
+
+	private <Z> Z declare(String name, Z variable) {
+		declared.put(name, variable);
+		return variable;
+	}
+
+	/**
+	 * Restores every variable to its initial value.
+	 */
+	synchronized void reset() {
+		for (int i=0; i < longs.length; ++i) {
+			System.arraycopy(initialLongs, i * BLOCK, longs[i], 0, Math.min(BLOCK, initialLongs.length - i * BLOCK));
+		}
+
+		for (int i=0; i < ints.length; ++i) {
+			System.arraycopy(initialInts, i * BLOCK, ints[i], 0, Math.min(BLOCK, initialInts.length - i * BLOCK));
+		}
+
+		for (int i=0; i < objects.length; ++i) {
+			System.arraycopy(initialObjects, i * BLOCK, objects[i], 0, Math.min(BLOCK, initialObjects.length - i * BLOCK));
+		}
+	}
+
+	/**
+	 * A variable holding a {@code long}.
+	 */
+	public static final class LongVariable {
+		private final String name;
+		private final long[] block;
+		private final int slot;
+
+		private LongVariable(String name, long[] block, int slot) {
+			this.name = name;
+			this.block = block;
+			this.slot = slot;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public long get() {
+			return block[slot];
+		}
+
+		public void set(long value) {
+			block[slot] = value;
+		}
+
+		/**
+		 * @param delta to add to the current value
+		 * @return the new value
+		 */
+		public long add(long delta) {
+			return block[slot] += delta;
+		}
+
+		@Override
+		public String toString() {
+			return name+"="+get();
+		}
+	}
+
+	/**
+	 * A variable holding an {@code int}.
+	 */
+	public static final class IntVariable {
+		private final String name;
+		private final int[] block;
+		private final int slot;
+
+		private IntVariable(String name, int[] block, int slot) {
+			this.name = name;
+			this.block = block;
+			this.slot = slot;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public int get() {
+			return block[slot];
+		}
+
+		public void set(int value) {
+			block[slot] = value;
+		}
+
+		/**
+		 * @param delta to add to the current value
+		 * @return the new value
+		 */
+		public int add(int delta) {
+			return block[slot] += delta;
+		}
+
+		@Override
+		public String toString() {
+			return name+"="+get();
+		}
+	}
+
+	/**
+	 * A variable holding an object.
+	 */
+	public static final class Variable<V> {
+		private final String name;
+		private final Object[] block;
+		private final int slot;
+
+		private Variable(String name, Object[] block, int slot) {
+			this.name = name;
+			this.block = block;
+			this.slot = slot;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V get() {
+			return (V) block[slot];
+		}
+
+		public void set(V value) {
+			block[slot] = value;
+		}
+
+		@Override
+		public String toString() {
+			return name+"="+get();
+		}
+	}
+}
@@ -23,23 +23,60 @@
 
 package unquietcode.tools.esm;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * @author Ben Fagin
  * @version 2013-07-08
  */
 public class StringStateMachine extends WrappedStateMachine<StringStateMachine.StringState, String> implements FactoryStateMachine<String> {
 
+	// the known states, by both their canonical and original names
+	private ConcurrentMap<String, StringState> knownStates;
+
 	public StringStateMachine() {
 		super();
+		knownStates();
 	}
 
 	public StringStateMachine(String initial) {
 		super(initial);
+		knownStates();
 	}
 
 	@Override
 	protected StringState wrap(String unwrapped) {
-		return new StringState(unwrapped);
+		ConcurrentMap<String, StringState> known = knownStates();
+		StringState state = known.get(unwrapped);
+
+		if (state == null) {
+			state = known.computeIfAbsent(canonicalize(unwrapped), name -> new StringState(name.intern()));
+			known.putIfAbsent(unwrapped, state);
+		}
+
+		return state;
+	}
+
+	@Override
+	protected StringState lookup(String unwrapped) {
+		ConcurrentMap<String, StringState> known = knownStates();
+		StringState state = known.get(unwrapped);
+
+		if (state != null) {
+			return state;
+		}
+
+		// not seen before under this name, so take the long way around
+		String name = canonicalize(unwrapped);
+		state = known.get(name);
+
+		return state != null ? state : new StringState(name);
+	}
+
+	@Override
+	protected boolean hasCanonicalWrappers() {
+		return true;
 	}
 
 	@Override
@@ -47,13 +84,23 @@ public class StringStateMachine extends WrappedStateMachine<StringStateMachine.S
 		return wrapped.string;
 	}
 
+	// created lazily, since the parent constructor can wrap the initial state
+	private ConcurrentMap<String, StringState> knownStates() {
+		if (knownStates == null) {
+			knownStates = new ConcurrentHashMap<>();
+		}
+
+		return knownStates;
+	}
+
+	private static String canonicalize(String name) {
+		return name.trim().toLowerCase();
+	}
+
 	static class StringState implements State {
 		private final String string;
 
-		public StringState(String string) {
-			if (string != null) {
-				string = string.trim().toLowerCase().intern();
-			}
+		private StringState(String string) {
 			this.string = string;
 		}
 
@@ -77,6 +124,7 @@ public class StringStateMachine extends WrappedStateMachine<StringStateMachine.S
 			return null;
 		}
 
-		return name.trim().toLowerCase().intern();
+		StringState state = knownStates().get(name);
+		return state != null ? state.string : canonicalize(name);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.time.Duration;
+
+/**
+ * A state machine which can leave a state on its own, once it has
+ * stayed there for too long.
+ *
+ * @version 10-18-2026
+ */
+public interface TimeoutStateMachine<T> {
+
+	/**
+	 * Transition to the target state whenever the state machine stays in the
+	 * given state for longer than the timeout. The timeout starts over each time
+	 * the state is entered, and is cancelled when the state is left. A timeout on a
+	 * state with substates keeps running while moving between them.
+	 *
+	 * If the transition from the state to the target is not yet defined, it is
+	 * added as with {@link ProgrammableStateMachine#addTransition(Object, Object)},
+	 * which resets the state machine. Otherwise the timeout is registered without
+	 * a reset, and starts counting right away if the state machine is already in
+	 * the state.
+	 *
+	 * @param state to time
+	 * @param timeout how long to stay in the state
+	 * @param target the state to transition to
+	 * @return registration to assist in removing the timeout
+	 */
+	HandlerRegistration onTimeout(T state, Duration timeout, T target);
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hierarchical timing wheel, shared by every state machine, which
+ * runs the timeouts and delayed transitions. Scheduling and cancelling
+ * a timeout take constant time no matter how many are pending, and a
+ * single daemon thread does all of the bookkeeping.
+ *
+ * Each level of the wheel has 64 slots, with the slots of each level
+ * spanning 64 times as many ticks as those of the level below. A timeout
+ * is placed on the lowest level which can hold it, and is moved down a
+ * level whenever the wheel turns over to its slot. Timeouts only ever
+ * fire late, by up to one tick.
+ *
+ * New and cancelled timeouts are handed to the ticker thread through
+ * queues, so that only the ticker thread touches the wheel itself. The
+ * tasks are run on the ticker thread, and should only be used to hand
+ * off work, such as by enqueueing a transition.
+ *
+ * @version 10-18-2026
+ */
+final class TimingWheel {
+	static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	// enough for 2^42 ticks, or more than a century
+	private static final int LEVELS = 7;
+
+	private final Timeout[][] wheels = new Timeout[LEVELS][WHEEL_SIZE];
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+	private final long origin = System.nanoTime();
+	private final Thread ticker;
+
+	// set while the ticker is parked with nothing to do
+	private volatile boolean idle = false;
+
+	// only used by the ticker thread
+	private long tick = 0;
+	private int count = 0;
+
+	private static class Shared {
+		static final TimingWheel INSTANCE = new TimingWheel("jstate-timer");
+	}
+
+	/**
+	 * @return the timing wheel shared by every state machine, started as needed
+	 */
+	static TimingWheel shared() {
+		return Shared.INSTANCE;
+	}
+
+	TimingWheel(String name) {
+		ticker = new Thread(this::run, name);
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/**
+	 * Schedules the task to run once the delay has elapsed.
+	 *
+	 * @param delayNanos the delay, in nanoseconds
+	 * @param task to run on the ticker thread
+	 * @return the timeout, for cancelling
+	 */
+	Timeout schedule(long delayNanos, Runnable task) {
+		long now = System.nanoTime() - origin;
+
+		// a delay too long to count is as good as never
+		long elapsed = now + Math.min(Math.max(0, delayNanos), Long.MAX_VALUE - TICK_NANOS - now);
+
+		// round up, so that a timeout never fires early
+		Timeout timeout = new Timeout((elapsed + TICK_NANOS - 1) / TICK_NANOS, task);
+		added.add(timeout);
+
+		if (idle) {
+			LockSupport.unpark(ticker);
+		}
+
+		return timeout;
+	}
+
+	private void run() {
+		while (true) {
+			long now = (System.nanoTime() - origin) / TICK_NANOS;
+
+			transferCancelled();
+			transferAdded();
+
+			if (count == 0) {
+				tick = Math.max(tick, now);
+				idle = true;
+
+				// check again, in case a timeout was added before the flag was set
+				if (added.isEmpty()) {
+					LockSupport.park(this);
+				}
+
+				idle = false;
+				continue;
+			}
+
+			while (tick < now) {
+				advance();
+			}
+
+			long wake = origin + (tick + 1) * TICK_NANOS;
+			LockSupport.parkNanos(this, wake - System.nanoTime());
+		}
+	}
+
+	private void transferAdded() {
+		Timeout timeout;
+
+		while ((timeout = added.poll()) != null) {
+			if (timeout.state == Timeout.PENDING) {
+				insert(timeout);
+			}
+		}
+	}
+
+	private void transferCancelled() {
+		Timeout timeout;
+
+		while ((timeout = cancelled.poll()) != null) {
+			if (timeout.level != Timeout.UNLINKED) {
+				unlink(timeout);
+			}
+		}
+	}
+
+	private void advance() {
+		tick += 1;
+
+		// move the timeouts of the higher levels down as the wheel turns over
+		for (int level=1; level < LEVELS; ++level) {
+			int shift = WHEEL_BITS * level;
+
+			if ((tick & ((1L << shift) - 1)) != 0) {
+				break;
+			}
+
+			Timeout timeout = detach(level, (int) ((tick >>> shift) & WHEEL_MASK));
+
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				timeout.next = null;
+				insert(timeout);
+				timeout = next;
+			}
+		}
+
+		Timeout timeout = detach(0, (int) (tick & WHEEL_MASK));
+
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			timeout.next = null;
+			insert(timeout);
+			timeout = next;
+		}
+	}
+
+	private void insert(Timeout timeout) {
+		long delta = timeout.deadline - tick;
+
+		if (delta <= 0) {
+			timeout.expire();
+			return;
+		}
+
+		int level = 0;
+
+		while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+			level += 1;
+		}
+
+		int slot = (int) ((timeout.deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		Timeout head = wheels[level][slot];
+
+		timeout.level = level;
+		timeout.slot = slot;
+		timeout.prev = null;
+		timeout.next = head;
+
+		if (head != null) {
+			head.prev = timeout;
+		}
+
+		wheels[level][slot] = timeout;
+		count += 1;
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			wheels[timeout.level][timeout.slot] = timeout.next;
+		}
+
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+
+		timeout.level = Timeout.UNLINKED;
+		timeout.prev = timeout.next = null;
+		count -= 1;
+	}
+
+	// removes every timeout in the slot, returning the first
+	private Timeout detach(int level, int slot) {
+		Timeout head = wheels[level][slot];
+		wheels[level][slot] = null;
+
+		for (Timeout t = head; t != null; t = t.next) {
+			t.level = Timeout.UNLINKED;
+			t.prev = null;
+			count -= 1;
+		}
+
+		return head;
+	}
+
+	final class Timeout {
+		static final int PENDING = 0;
+		static final int CANCELLED = 1;
+		static final int EXPIRED = 2;
+
+		private static final int UNLINKED = -1;
+
+		final Runnable task;
+		private final long deadline;
+
+		// not private, so that the updater can reach it
+		volatile int state = PENDING;
+
+		// only used by the ticker thread
+		private int level = UNLINKED;
+		private int slot;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(long deadline, Runnable task) {
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		/**
+		 * @return true if the timeout was cancelled, false if it had already fired
+		 */
+		boolean cancel() {
+			if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+				return false;
+			}
+
+			cancelled.add(this);
+			return true;
+		}
+
+		boolean isPending() {
+			return state == PENDING;
+		}
+
+		private void expire() {
+			if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+				return;
+			}
+
+			try {
+				task.run();
+			} catch (Throwable e) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	private static final AtomicIntegerFieldUpdater<Timeout> STATE
+		= AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+}
@@ -23,25 +23,41 @@
 
 package unquietcode.tools.esm;
 
+import unquietcode.tools.esm.events.EventDrivenStateMachine;
 import unquietcode.tools.esm.routing.StateRouter;
 import unquietcode.tools.esm.sequences.Pattern;
 import unquietcode.tools.esm.sequences.PatternBuilder;
 import unquietcode.tools.esm.sequences.SequenceHandler;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 
-public abstract class WrappedStateMachine<_Wrapper extends State, _Type> implements StateMachine<_Type> {
+public abstract class WrappedStateMachine<_Wrapper extends State, _Type>
+	implements StateMachine<_Type>, PayloadStateMachine<_Type>, PathFindingStateMachine<_Type>, VariableStateMachine,
+		EventDrivenStateMachine<_Type>, TimeoutStateMachine<_Type>, SchedulingStateMachine<_Type>,
+		HierarchicalStateMachine<_Type>
+{
 	private final GenericStateMachine<_Wrapper> proxy;
-	private final Map<_Type, _Wrapper> wrapperCache = new HashMap<_Type, _Wrapper>();
-	
+
+	// wrappers for the values used to define the state machine
+	private final ConcurrentMap<_Type, _Wrapper> registeredWrappers = new ConcurrentHashMap<>();
+
+	// wrappers for any other values, which can be evicted
+	private final ConcurrentMap<_Type, _Wrapper> wrapperCache = new ConcurrentHashMap<>();
+	private volatile int wrapperCacheLimit = -1;
+
 	public WrappedStateMachine() {
-		proxy = new GenericStateMachine<>();
+		proxy = new GenericStateMachine<>(null, this::_unwrap, this::_lookupValue);
 	}
 
 	public WrappedStateMachine(_Type initial) {
-		proxy = new GenericStateMachine<>(_wrap(initial));
+		proxy = new GenericStateMachine<>(_wrap(initial), this::_unwrap, this::_lookupValue);
 	}
 
 	@Override
@@ -67,20 +83,133 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 	
 	private _Wrapper _wrap(_Type unwrapped) {
 		if (unwrapped == null) { return null; }
-		_Wrapper wrapper;
+		if (hasCanonicalWrappers()) { return wrap(unwrapped); }
+		_Wrapper wrapper = registeredWrappers.get(unwrapped);
+
+		if (wrapper == null) {
 
-		if (wrapperCache.containsKey(unwrapped)) {
-			wrapper = wrapperCache.get(unwrapped);
-		} else {
-			wrapper = wrap(unwrapped);
-			wrapperCache.put(unwrapped, wrapper);
+			// keep the wrapper which was already handed out, if there is one
+			_Wrapper cached = wrapperCache.remove(unwrapped);
+			wrapper = cached != null ? cached : wrap(unwrapped);
+
+			_Wrapper existing = registeredWrappers.putIfAbsent(unwrapped, wrapper);
+
+			if (existing != null) {
+				wrapper = existing;
+			}
 		}
 
 		return wrapper;
 	}
+
+	private _Wrapper _lookup(_Type unwrapped) {
+		if (unwrapped == null) { return null; }
+		if (hasCanonicalWrappers()) { return lookup(unwrapped); }
+		_Wrapper wrapper = registeredWrappers.get(unwrapped);
+
+		if (wrapper != null) {
+			return wrapper;
+		}
+
+		final int limit = wrapperCacheLimit;
+
+		if (limit == 0) {
+			return lookup(unwrapped);
+		}
+
+		wrapper = wrapperCache.get(unwrapped);
+
+		if (wrapper == null) {
+
+			// make room by evicting some of the unregistered values
+			if (limit > 0) {
+				evict(wrapperCache.size() - limit + 1);
+			}
+
+			wrapper = lookup(unwrapped);
+			_Wrapper existing = wrapperCache.putIfAbsent(unwrapped, wrapper);
+
+			if (existing != null) {
+				wrapper = existing;
+			}
+		}
+
+		return wrapper;
+	}
+
+	private void evict(int count) {
+		Iterator<_Type> keys = wrapperCache.keySet().iterator();
+
+		while (count-- > 0 && keys.hasNext()) {
+			keys.next();
+			keys.remove();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private _Wrapper _lookupValue(Object unwrapped) {
+		return _lookup((_Type) unwrapped);
+	}
+
+	/*
+		The proxy passes the unwrapped values along to its callbacks,
+		routers, and sequence handlers, so they can be registered as-is.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <C> C direct(Object callback) {
+		return (C) callback;
+	}
+
+	/**
+	 * Limits the number of wrappers which are cached for values that have
+	 * not been used to define the state machine, such as those which are
+	 * only ever transitioned to. Once the limit is reached, an arbitrary
+	 * cached wrapper is evicted to make room for each new one. The wrappers
+	 * of the defined states are always kept.
+	 *
+	 * Subclasses with canonical wrappers manage their own caching, and
+	 * are unaffected by this setting.
+	 *
+	 * @param limit the maximum number of cached wrappers, 0 to disable
+	 *              caching of unregistered values, or -1 for no limit
+	 */
+	public void setWrapperCacheLimit(int limit) {
+		if (limit < -1) {
+			throw new IllegalArgumentException("limit must be -1 or greater");
+		}
+
+		wrapperCacheLimit = limit;
+
+		if (limit >= 0) {
+			evict(wrapperCache.size() - limit);
+		}
+	}
 	
 	protected abstract _Type unwrap(_Wrapper wrapped);
 	protected abstract _Wrapper wrap(_Type unwrapped);
+
+	/**
+	 * Wraps a value which is being transitioned to, rather than one which
+	 * is being used to define the state machine. Subclasses which keep
+	 * track of their states can use this to avoid remembering values
+	 * which are unknown to the state machine.
+	 *
+	 * @param unwrapped the value to wrap
+	 * @return the wrapped value
+	 */
+	protected _Wrapper lookup(_Type unwrapped) {
+		return wrap(unwrapped);
+	}
+
+	/**
+	 * Subclasses which already return the same wrapper instance for
+	 * a given value from {@link #wrap(Object)} can skip the cache.
+	 *
+	 * @return true if the wrappers are canonical
+	 */
+	protected boolean hasCanonicalWrappers() {
+		return false;
+	}
 	
 	//==o==o==o==o==o==o==| interface methods |==o==o==o==o==o==o==//
 
@@ -96,12 +225,62 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 
 	@Override
 	public boolean transition(_Type state) {
-		return proxy.transition(_wrap(state));
+		return proxy.transition(_lookup(state));
 	}
 
 	@Override
 	public Future<Boolean> transitionAsync(_Type state) throws TransitionException {
-		return proxy.transitionAsync(_wrap(state));
+		return proxy.transitionAsync(_lookup(state));
+	}
+
+	@Override
+	public boolean transition(_Type state, Object payload) {
+		return proxy.transition(_lookup(state), payload);
+	}
+
+	@Override
+	public Future<Boolean> transitionAsync(_Type state, Object payload) throws TransitionException {
+		return proxy.transitionAsync(_lookup(state), payload);
+	}
+
+	@Override
+	public boolean fire(Object event) {
+		return proxy.fire(event);
+	}
+
+	@Override
+	public boolean fire(Object event, Object payload) {
+		return proxy.fire(event, payload);
+	}
+
+	@Override
+	public Future<Boolean> fireAsync(Object event) throws TransitionException {
+		return proxy.fireAsync(event);
+	}
+
+	@Override
+	public Future<Boolean> fireAsync(Object event, Object payload) throws TransitionException {
+		return proxy.fireAsync(event, payload);
+	}
+
+	@Override
+	public Future<Boolean> transitionAfter(_Type state, Duration delay) {
+		return proxy.transitionAfter(_lookup(state), delay);
+	}
+
+	@Override
+	public Future<Boolean> transitionAt(_Type state, Instant when) {
+		return proxy.transitionAt(_lookup(state), when);
+	}
+
+	@Override
+	public boolean transitionTo(_Type target) {
+		return proxy.transitionTo(_lookup(target));
+	}
+
+	@Override
+	public Future<Boolean> transitionToAsync(_Type target) throws TransitionException {
+		return proxy.transitionToAsync(_lookup(target));
 	}
 
 	@Override
@@ -119,76 +298,93 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 		proxy.setInitialState(_wrap(state));
 	}
 
+	/**
+	 * @see GenericStateMachine#setIndependentExecutor(Executor)
+	 */
+	public void setIndependentExecutor(Executor executor) {
+		proxy.setIndependentExecutor(executor);
+	}
+
+	@Override
+	public HandlerRegistration onTimeout(_Type state, Duration timeout, _Type target) {
+		return proxy.onTimeout(_wrap(state), timeout, _wrap(target));
+	}
+
+	@Override
+	public StateVariables variables() {
+		return proxy.variables();
+	}
+
 	@Override
 	public HandlerRegistration onEntering(StateHandler<_Type> callback) {
-		return proxy.onEntering(new StateCallbackWrapper(callback));
+		return proxy.onEntering(direct(callback));
 	}
 
 	@Override
 	public HandlerRegistration onEntering(_Type state, StateHandler<_Type> callback) {
-		return proxy.onEntering(_wrap(state), new StateCallbackWrapper(callback));
+		return proxy.onEntering(_wrap(state), direct(callback));
 	}
 
 	@Override
 	public HandlerRegistration onExiting(StateHandler<_Type> callback) {
-		return proxy.onExiting(new StateCallbackWrapper(callback));
+		return proxy.onExiting(direct(callback));
 	}
 
 	@Override
 	public HandlerRegistration onExiting(_Type state, StateHandler<_Type> callback) {
-		return proxy.onExiting(_wrap(state), new StateCallbackWrapper(callback));
+		return proxy.onExiting(_wrap(state), direct(callback));
 	}
 
 	@Override
 	public HandlerRegistration onTransition(TransitionHandler<_Type> callback) {
-		return proxy.onTransition(new TransitionCallbackWrapper(callback));
+		return proxy.onTransition(direct(callback));
 	}
 
 	@Override
 	public HandlerRegistration onTransition(_Type from, _Type to, TransitionHandler<_Type> callback) {
-		return proxy.onTransition(_wrap(from), _wrap(to), new TransitionCallbackWrapper(callback));
+		return proxy.onTransition(_wrap(from), _wrap(to), direct(callback));
 	}
 
 	@Override
 	public HandlerRegistration routeOnTransition(StateRouter<_Type> router) {
-		return proxy.routeOnTransition(new RouterWrapper(router));
+		return proxy.routeOnTransition(direct(router));
 	}
 
 	@Override
 	public HandlerRegistration routeOnTransition(_Type from, _Type to, StateRouter<_Type> router) {
-		return proxy.routeOnTransition(_wrap(from), _wrap(to), new RouterWrapper(router));
+		return proxy.routeOnTransition(_wrap(from), _wrap(to), direct(router));
 	}
 
 	@Override
 	public HandlerRegistration routeBeforeEntering(_Type to, StateRouter<_Type> router) {
-		return proxy.routeBeforeEntering(_wrap(to), new RouterWrapper(router));
+		return proxy.routeBeforeEntering(_wrap(to), direct(router));
 	}
 
 	@Override
 	public HandlerRegistration routeAfterExiting(_Type from, StateRouter<_Type> router) {
-		return proxy.routeAfterExiting(_wrap(from), new RouterWrapper(router));
+		return proxy.routeAfterExiting(_wrap(from), direct(router));
 	}
 
 	@Override
 	public HandlerRegistration onSequence(Pattern<_Type> pattern, SequenceHandler<_Type> handler) {
-		PatternBuilder<_Wrapper> patternBuilder = PatternBuilder.create();
+		List<Object> values = new ArrayList<>();
 
+		// the proxy compares against the canonical values of the states
 		for (Object type : pattern.pattern()) {
 
 			if (PatternBuilder.isWildcard(type)) {
-				patternBuilder.addWildcard();
+				values.add(type);
 				continue;
 			}
 
 			@SuppressWarnings("unchecked")
 			_Type type_ = (_Type) type;
 
-			_Wrapper wrapped = _wrap(type_);
-			patternBuilder.add(wrapped);
+			values.add(_unwrap(_wrap(type_)));
 		}
 
-		Pattern<_Wrapper> pattern_ = patternBuilder.build();
-		return proxy.onSequence(pattern_, new SequenceWrapper(handler));
+		Pattern<_Wrapper> pattern_ = direct(PatternBuilder.createFrom(values));
+		return proxy.onSequence(pattern_, direct(handler));
 	}
 
 	@Override
@@ -203,7 +399,7 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 
 	@Override
 	public boolean addTransitions(TransitionHandler<_Type> callback, _Type fromState, _Type...toStates) {
-		return proxy.addTransitions(_wrap(fromState), wrap(toStates), new TransitionCallbackWrapper(callback));
+		return proxy.addTransitions(_wrap(fromState), wrap(toStates), direct(callback));
 	}
 
 	@Override
@@ -213,7 +409,7 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 
 	@Override
 	public boolean addTransition(_Type fromState, _Type toState, TransitionHandler<_Type> callback) {
-		return proxy.addTransition(_wrap(fromState), _wrap(toState), new TransitionCallbackWrapper(callback));
+		return proxy.addTransition(_wrap(fromState), _wrap(toState), direct(callback));
 	}
 
 	@Override
@@ -228,7 +424,7 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 
 	@Override
 	public boolean addTransitions(_Type fromState, List<_Type> toStates, TransitionHandler<_Type> callback) {
-		return proxy.addTransitions(_wrap(fromState), wrap(toStates), new TransitionCallbackWrapper(callback));
+		return proxy.addTransitions(_wrap(fromState), wrap(toStates), direct(callback));
 	}
 
 	@Override
@@ -236,6 +432,16 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 		return proxy.addTransitions(_wrap(fromState), wrap(toStates));
 	}
 
+	@Override
+	public boolean addSubstates(_Type parentState, List<_Type> substates) {
+		return proxy.addSubstates(_wrap(parentState), wrap(substates));
+	}
+
+	@Override
+	public boolean addEventTransitions(Object event, List<_Type> fromStates, _Type toState) {
+		return proxy.addEventTransitions(event, wrap(fromStates), _wrap(toState));
+	}
+
 	@Override
 	public String toString() {
 		return proxy.toString();
@@ -243,6 +449,14 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 
 	//---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---o---//
 
+	StateMachineBinaryFormat.Graph exportGraph() {
+		return proxy.exportGraph();
+	}
+
+	void importGraph(List<_Type> states, int initial, int[][] adjacency) {
+		proxy.importGraph(wrap(states), initial, adjacency);
+	}
+
 	private List<_Wrapper> wrap(_Type[] array) {
 		return wrap(Arrays.asList(array));
 	}
@@ -256,107 +470,4 @@ public abstract class WrappedStateMachine<_Wrapper extends State, _Type> impleme
 
 		return wrapped;
 	}
-
-	private class RouterWrapper implements StateRouter<_Wrapper> {
-		private final StateRouter<_Type> proxy;
-
-		RouterWrapper(StateRouter<_Type> proxy) {
-			this.proxy = proxy;
-		}
-
-		@Override
-		public _Wrapper route(_Wrapper current, _Wrapper next) {
-			_Type decision = proxy.route(_unwrap(current), _unwrap(next));
-			return _wrap(decision);
-		}
-
-		@Override
-		public int hashCode() {
-			return proxy.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			RouterWrapper other = (RouterWrapper) obj;
-			return proxy.equals(other.proxy);
-		}
-	}
-
-	private class SequenceWrapper implements SequenceHandler<_Wrapper> {
-		private final SequenceHandler<_Type> handler;
-
-		SequenceWrapper(SequenceHandler<_Type> handler) {
-			this.handler = handler;
-		}
-
-		@Override
-		public void onMatch(List<_Wrapper> pattern) {
-			List<_Type> unwrapped = new ArrayList<_Type>();
-
-			for (_Wrapper wrapped : pattern) {
-				unwrapped.add(_unwrap(wrapped));
-			}
-
-			handler.onMatch(Collections.unmodifiableList(unwrapped));
-		}
-
-		@Override
-		public int hashCode() {
-			return handler.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			SequenceWrapper other = (SequenceWrapper) obj;
-			return handler.equals(other.handler);
-		}
-	}
-
-	private class StateCallbackWrapper implements StateHandler<_Wrapper> {
-		private final StateHandler<_Type> callback;
-
-		StateCallbackWrapper(StateHandler<_Type> callback) {
-			this.callback = callback;
-		}
-
-		@Override
-		public void onState(_Wrapper state) {
-			callback.onState(_unwrap(state));
-		}
-
-		@Override
-		public int hashCode() {
-			return callback.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			StateCallbackWrapper other = (StateCallbackWrapper) obj;
-			return callback.equals(other.callback);
-		}
-	}
-
-	private class TransitionCallbackWrapper implements TransitionHandler<_Wrapper> {
-		private final TransitionHandler<_Type> callback;
-
-		TransitionCallbackWrapper(TransitionHandler<_Type> callback) {
-			this.callback = callback;
-		}
-
-		@Override
-		public void onTransition(_Wrapper from, _Wrapper to) {
-			callback.onTransition(_unwrap(from), _unwrap(to));
-		}
-
-		@Override
-		public int hashCode() {
-			return callback.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			TransitionCallbackWrapper other = (TransitionCallbackWrapper) obj;
-			return callback.equals(other.callback);
-		}
-	}
 }
\ No newline at end of file
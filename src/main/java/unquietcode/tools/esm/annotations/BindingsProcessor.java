@@ -0,0 +1,250 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.annotations;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.*;
+
+/**
+ * Generates the code which binds annotated handler methods to a string
+ * based state machine, as an alternative to the method name scanning
+ * done at runtime by {@link unquietcode.tools.esm.ReflectiveStateMachine}.
+ *
+ * For a class {@code Light} (or a nested class {@code Outer.Light}) a class
+ * named {@code Light_Bindings} (or {@code Outer_Light_Bindings}) is generated
+ * in the same package, with a static {@code bind} method to be called once
+ * the machine has been created:
+ *
+ * <pre>
+ * public class Light extends StringStateMachine {
+ *
+ *	public Light() {
+ *		super("red");
+ *		addTransitions("red", "green");
+ *		Light_Bindings.bind(this);
+ *	}
+ *
+ *	&#64;OnEntering("green")
+ *	void go(String state) {
+ *		...
+ *	}
+ * }
+ * </pre>
+ *
+ * The handlers call the methods directly, so no reflection is used.
+ * Handler methods cannot be private, and nested classes must be static.
+ *
+ * @version 10-18-2026
+ */
+@SupportedAnnotationTypes({
+	"unquietcode.tools.esm.annotations.OnEntering",
+	"unquietcode.tools.esm.annotations.OnExiting",
+	"unquietcode.tools.esm.annotations.OnTransition",
+})
+public class BindingsProcessor extends AbstractProcessor {
+	private static final String MACHINE_TYPE = "unquietcode.tools.esm.ProgrammableStateMachine";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+		Map<TypeElement, Set<ExecutableElement>> handlers = new LinkedHashMap<>();
+
+		for (Class<? extends Annotation> annotation : Arrays.asList(OnEntering.class, OnExiting.class, OnTransition.class)) {
+			for (Element element : round.getElementsAnnotatedWith(annotation)) {
+				ExecutableElement method = (ExecutableElement) element;
+				TypeElement owner = (TypeElement) method.getEnclosingElement();
+				handlers.computeIfAbsent(owner, k -> new LinkedHashSet<>()).add(method);
+			}
+		}
+
+		for (Map.Entry<TypeElement, Set<ExecutableElement>> entry : handlers.entrySet()) {
+			if (isValid(entry.getKey(), entry.getValue())) {
+				generate(entry.getKey(), entry.getValue());
+			}
+		}
+
+		return true;
+	}
+
+	private boolean isValid(TypeElement owner, Set<ExecutableElement> methods) {
+		boolean valid = true;
+		Types types = processingEnv.getTypeUtils();
+		TypeMirror stringType = processingEnv.getElementUtils().getTypeElement("java.lang.String").asType();
+
+		// the generated handlers pass states along as strings
+		TypeElement machineType = processingEnv.getElementUtils().getTypeElement(MACHINE_TYPE);
+		TypeMirror stringMachine = types.getDeclaredType(machineType, stringType);
+
+		if (!types.isSubtype(owner.asType(), stringMachine)) {
+			error(owner, "handlers can only be declared by a state machine of strings, such as a StringStateMachine");
+			valid = false;
+		}
+
+		if (owner.getModifiers().contains(Modifier.PRIVATE)) {
+			error(owner, "a class with handlers cannot be private");
+			valid = false;
+		}
+
+		if (owner.getNestingKind() == NestingKind.MEMBER && !owner.getModifiers().contains(Modifier.STATIC)) {
+			error(owner, "a nested class with handlers must be static");
+			valid = false;
+		} else if (owner.getNestingKind() == NestingKind.LOCAL || owner.getNestingKind() == NestingKind.ANONYMOUS) {
+			error(owner, "handlers cannot be declared by local or anonymous classes");
+			valid = false;
+		}
+
+		for (ExecutableElement method : methods) {
+			int maxArguments = method.getAnnotation(OnTransition.class) != null ? 2 : 1;
+			boolean stateHandler = method.getAnnotation(OnEntering.class) != null || method.getAnnotation(OnExiting.class) != null;
+
+			if (stateHandler && method.getAnnotation(OnTransition.class) != null) {
+				error(method, "a method cannot handle both states and transitions");
+				valid = false;
+			}
+
+			if (method.getModifiers().contains(Modifier.PRIVATE)) {
+				error(method, "handler methods cannot be private");
+				valid = false;
+			}
+
+			if (method.getParameters().size() > maxArguments) {
+				error(method, "expected at most "+maxArguments+" arguments");
+				valid = false;
+			}
+
+			for (VariableElement parameter : method.getParameters()) {
+				if (!types.isAssignable(stringType, parameter.asType())) {
+					error(parameter, "handler parameters must accept a String, not "+parameter.asType());
+					valid = false;
+				}
+			}
+		}
+
+		return valid;
+	}
+
+	private void generate(TypeElement owner, Set<ExecutableElement> methods) {
+		String packageName = processingEnv.getElementUtils().getPackageOf(owner).getQualifiedName().toString();
+		String className = bindingsName(owner);
+		String ownerName = owner.getQualifiedName().toString();
+
+		StringBuilder sb = new StringBuilder();
+
+		if (!packageName.isEmpty()) {
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+
+		sb.append("/**\n");
+		sb.append(" * Binds the annotated handlers of {@link ").append(ownerName).append("}.\n");
+		sb.append(" * Generated by ").append(BindingsProcessor.class.getName()).append(", do not edit.\n");
+		sb.append(" */\n");
+
+		if (owner.getModifiers().contains(Modifier.PUBLIC)) {
+			sb.append("public ");
+		}
+
+		sb.append("final class ").append(className).append(" {\n");
+		sb.append("\tprivate ").append(className).append("() { }\n\n");
+		sb.append("\tpublic static void bind(final ").append(ownerName).append(" machine) {\n");
+
+		for (ExecutableElement method : methods) {
+			String target = method.getModifiers().contains(Modifier.STATIC) ? ownerName : "machine";
+			String call = target+"."+method.getSimpleName();
+
+			OnEntering entering = method.getAnnotation(OnEntering.class);
+			OnExiting exiting = method.getAnnotation(OnExiting.class);
+
+			if (entering != null) {
+				bindStateHandler(sb, "onEntering", entering.value(), call, method);
+			}
+
+			if (exiting != null) {
+				bindStateHandler(sb, "onExiting", exiting.value(), call, method);
+			}
+
+			if (method.getAnnotation(OnTransition.class) != null) {
+				String[] arguments = { "", "from", "from, to" };
+
+				sb.append("\t\tmachine.onTransition((from, to) -> ")
+				  .append(call).append("(").append(arguments[method.getParameters().size()]).append("));\n");
+			}
+		}
+
+		sb.append("\t}\n");
+		sb.append("}\n");
+
+		String qualifiedName = packageName.isEmpty() ? className : packageName+"."+className;
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, owner).openWriter()) {
+			writer.write(sb.toString());
+		} catch (IOException e) {
+			error(owner, "unable to write "+qualifiedName+": "+e.getMessage());
+		}
+	}
+
+	private void bindStateHandler(StringBuilder sb, String register, String[] states, String call, ExecutableElement method) {
+		String handler = "state -> "+call+"("+(method.getParameters().isEmpty() ? "" : "state")+")";
+
+		if (states.length == 0) {
+			sb.append("\t\tmachine.").append(register).append("(").append(handler).append(");\n");
+		}
+
+		for (String state : states) {
+			sb.append("\t\tmachine.").append(register).append("(")
+			  .append(processingEnv.getElementUtils().getConstantExpression(state))
+			  .append(", ").append(handler).append(");\n");
+		}
+	}
+
+	// Outer.Inner becomes Outer_Inner_Bindings
+	private static String bindingsName(TypeElement owner) {
+		StringBuilder name = new StringBuilder(owner.getSimpleName());
+		Element enclosing = owner.getEnclosingElement();
+
+		while (enclosing instanceof TypeElement) {
+			name.insert(0, enclosing.getSimpleName()+"_");
+			enclosing = enclosing.getEnclosingElement();
+		}
+
+		return name.append("_Bindings").toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
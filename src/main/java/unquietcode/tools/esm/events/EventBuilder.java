@@ -0,0 +1,74 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Defines the transitions for an event, as in
+ * {@code on(event).from(a, b).to(c)}.
+ *
+ * @version 10-18-2026
+ */
+public final class EventBuilder<T> {
+	private final EventDrivenStateMachine<T> stateMachine;
+	private final Object event;
+	private final List<T> fromStates = new ArrayList<>();
+
+	EventBuilder(EventDrivenStateMachine<T> stateMachine, Object event) {
+		if (event == null) {
+			throw new IllegalArgumentException("event cannot be null");
+		}
+
+		this.stateMachine = stateMachine;
+		this.event = event;
+	}
+
+	/**
+	 * @param states in which the event is handled
+	 * @return this builder
+	 */
+	@SafeVarargs
+	public final EventBuilder<T> from(T...states) {
+		fromStates.addAll(Arrays.asList(states));
+		return this;
+	}
+
+	/**
+	 * Completes the definition, transitioning from each of
+	 * the previously given states to the target state.
+	 *
+	 * @param state to transition to
+	 * @return true if the state machine was modified and a reset occurred, false otherwise
+	 */
+	public boolean to(T state) {
+		if (fromStates.isEmpty()) {
+			throw new IllegalStateException("no states to transition from");
+		}
+
+		return stateMachine.addEventTransitions(event, fromStates, state);
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.events;
+
+import unquietcode.tools.esm.TransitionException;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * A state machine which can be driven by events, as well as by
+ * requesting states directly. Each event leads from one or more
+ * states to a target state, and firing the event transitions to the
+ * target for whichever state the machine is in at the time. Events
+ * can be any object, compared by equality, such as enum constants or
+ * strings.
+ *
+ * <pre>{@code
+ * esm.on(Event.Start).from(State.Idle, State.Paused).to(State.Running);
+ * esm.fire(Event.Start);
+ * }</pre>
+ *
+ * A fired event is an ordinary transition, which is routed and calls
+ * the usual handlers.
+ *
+ * @version 10-18-2026
+ */
+public interface EventDrivenStateMachine<T> {
+
+	/**
+	 * Begins defining the transitions for an event.
+	 *
+	 * @param event the event
+	 * @return a builder for the transitions of the event
+	 */
+	default EventBuilder<T> on(Object event) {
+		return new EventBuilder<>(this, event);
+	}
+
+	/**
+	 * When the event is fired in any of the given states, transition to the
+	 * target state. The transitions are added to the state machine if needed,
+	 * as with {@link unquietcode.tools.esm.ProgrammableStateMachine#addTransitions(Object, List)},
+	 * and an event which was already defined for one of the states is replaced.
+	 *
+	 * @param event the event
+	 * @param fromStates the states in which the event is handled
+	 * @param toState the state to transition to
+	 * @return true if the state machine was modified and a reset occurred, false otherwise
+	 */
+	boolean addEventTransitions(Object event, List<T> fromStates, T toState);
+
+	/**
+	 * Fire the event, transitioning to its target for the current state.
+	 * Events which are not handled in the current state are ignored.
+	 *
+	 * @param event the event
+	 * @return true if moved to another state, false if continuing on the same state
+	 *
+	 * @throws TransitionException if a violation of the available transitions occurs
+	 */
+	boolean fire(Object event) throws TransitionException;
+
+	/**
+	 * Fire the event, passing the payload along as with
+	 * {@link unquietcode.tools.esm.PayloadStateMachine#transition(Object, Object)}.
+	 *
+	 * @see #fire(Object)
+	 */
+	boolean fire(Object event, Object payload) throws TransitionException;
+
+	/**
+	 * Fire the event asynchronously. Events are queued along with
+	 * the other transitions, and the target is chosen once the
+	 * transitions before it have been completed.
+	 *
+	 * @param event the event
+	 * @return a future which will resolve when the transition occurs
+	 */
+	Future<Boolean> fireAsync(Object event) throws TransitionException;
+
+	/**
+	 * Fire the event asynchronously, passing the payload along.
+	 *
+	 * @see #fireAsync(Object)
+	 */
+	Future<Boolean> fireAsync(Object event, Object payload) throws TransitionException;
+}
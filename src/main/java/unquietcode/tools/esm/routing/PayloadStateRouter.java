@@ -0,0 +1,55 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.routing;
+
+import unquietcode.tools.esm.PayloadStateHandler;
+
+/**
+ * A {@link StateRouter} which also receives the payload of the transition,
+ * and so can route on the data being carried. Since its decisions can
+ * differ from one payload to the next, a payload router is never treated
+ * as a {@link PureStateRouter}.
+ *
+ * @see PayloadStateHandler
+ *
+ * @version 10-18-2026
+ */
+@FunctionalInterface
+public interface PayloadStateRouter<T, P> extends StateRouter<T> {
+
+	/**
+	 * Route the transition, as with {@link StateRouter#route(Object, Object)}.
+	 *
+	 * @param current the current state
+	 * @param next the state being requested
+	 * @param payload the payload of the transition, or null if none
+	 * @return the next state, or null if no preference
+	 */
+	T route(T current, T next, P payload);
+
+	@Override
+	default T route(T current, T next) {
+		return route(current, next, null);
+	}
+}
@@ -23,17 +23,21 @@
 
 package unquietcode.tools.esm.routing;
 
-import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static java.util.Objects.requireNonNull;
 
 /**
+ * Routes to one of the states, chosen uniformly at random. The router
+ * holds no locks, and can be shared by any number of state machines.
+ *
+ * @see WeightedRandomStateRouter
+ *
  * @author Ben Fagin
  * @version 2018-04-18
  */
 public class RandomStateRouter<T> implements StateRouter<T> {
-	private final SecureRandom randomGenerator = new SecureRandom();
 	private final List<T> states;
 
 	public RandomStateRouter(Set<T> states) {
@@ -49,13 +53,13 @@ public class RandomStateRouter<T> implements StateRouter<T> {
 	}
 
 	@Override
-	public synchronized T route(T current, T next) {
+	public T route(T current, T next) {
 		if (states.isEmpty()) {
 			return next;
 		}
 
 		// find the next state by randomly selecting one from the list
-		int nextState = randomGenerator.nextInt(states.size());
+		int nextState = ThreadLocalRandom.current().nextInt(states.size());
 
 		return states.get(nextState);
 	}
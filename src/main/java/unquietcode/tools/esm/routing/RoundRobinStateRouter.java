@@ -25,20 +25,28 @@ package unquietcode.tools.esm.routing;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Objects.requireNonNull;
 
 /**
+ * Routes to each of the states in turn. The router holds no locks, and
+ * can be shared by any number of state machines, in which case the turns
+ * are shared among them as well. The states can be replaced at any time.
+ *
+ * @see WeightedRoundRobinStateRouter
+ *
  * @author Ben Fagin
  * @version 2018-04-18
  */
 public class RoundRobinStateRouter<T> implements StateRouter<T> {
-	private final List<T> states;
-	private int nextState = 0;
+	private volatile List<T> states;
+	private final AtomicLong counter = new AtomicLong();
 
 	public RoundRobinStateRouter(List<T> states) {
-		this.states = new ArrayList<>(requireNonNull(states));
+		setStates(states);
 	}
 
 	@SafeVarargs
@@ -47,20 +55,31 @@ public class RoundRobinStateRouter<T> implements StateRouter<T> {
 	}
 
 	@Override
-	public synchronized T route(T current, T next) {
+	public T route(T current, T next) {
+		final List<T> states = this.states;
+
 		if (states.isEmpty()) {
 			return next;
 		}
 
-		final T state = states.get(nextState);
+		long turn = counter.getAndIncrement();
+		return states.get((int) Math.floorMod(turn, (long) states.size()));
+	}
 
-		// increment the state number or rotate back to 0
-		if (nextState == states.size() - 1) {
-			nextState = 0;
-		} else {
-			nextState += 1;
-		}
+	/**
+	 * Replaces the states which are routed to. The rotation
+	 * carries on from where it was, rather than starting over.
+	 *
+	 * @param states the new states
+	 */
+	public void setStates(List<T> states) {
+		this.states = Collections.unmodifiableList(new ArrayList<>(requireNonNull(states)));
+	}
 
-		return state;
+	/**
+	 * @return the states which are routed to
+	 */
+	public List<T> getStates() {
+		return states;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.routing;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Routes to one of the states, chosen at random in proportion to its
+ * weight. Each decision takes constant time, using an alias table which
+ * is rebuilt whenever the weights change. The weights can be updated at
+ * any time without locking, and routing sees either the old weights or
+ * the new ones, never a mix of the two.
+ *
+ * @version 10-18-2026
+ */
+public class WeightedRandomStateRouter<T> implements StateRouter<T> {
+	private final AtomicReference<AliasTable<T>> table = new AtomicReference<>();
+
+	/**
+	 * @param weights the relative weight of each state, none of which can be negative
+	 */
+	public WeightedRandomStateRouter(Map<T, ? extends Number> weights) {
+		setWeights(weights);
+	}
+
+	@Override
+	public T route(T current, T next) {
+		return table.get().sample(next);
+	}
+
+	/**
+	 * Replaces all of the weights at once.
+	 *
+	 * @param weights the relative weight of each state, none of which can be negative
+	 */
+	public void setWeights(Map<T, ? extends Number> weights) {
+		table.set(new AliasTable<>(new LinkedHashMap<>(requireNonNull(weights))));
+	}
+
+	/**
+	 * Changes the weight of a single state, adding the state if it is
+	 * not already present. A weight of 0 stops it from being chosen.
+	 *
+	 * @param state the state to update
+	 * @param weight the new weight, which cannot be negative
+	 */
+	public void setWeight(T state, double weight) {
+		table.updateAndGet(current -> {
+			Map<T, Number> weights = current.weights();
+			weights.put(state, weight);
+			return new AliasTable<>(weights);
+		});
+	}
+
+	/**
+	 * @return a copy of the current weights
+	 */
+	public Map<T, Double> getWeights() {
+		Map<T, Double> weights = new LinkedHashMap<>();
+
+		for (Map.Entry<T, Number> entry : table.get().weights().entrySet()) {
+			weights.put(entry.getKey(), entry.getValue().doubleValue());
+		}
+
+		return weights;
+	}
+
+	/*
+		Vose's alias method. Every column holds its own state with some
+		probability, and an alias for the rest, so that sampling is just
+		picking a column and then flipping a biased coin.
+	 */
+	private static final class AliasTable<T> {
+		private final Object[] states;
+		private final double[] weights;
+		private final double[] probability;
+		private final int[] alias;
+		private final boolean empty;
+
+		AliasTable(Map<T, ? extends Number> weights) {
+			final int n = weights.size();
+			states = new Object[n];
+			this.weights = new double[n];
+			probability = new double[n];
+			alias = new int[n];
+
+			double total = 0;
+			int i = 0;
+
+			for (Map.Entry<T, ? extends Number> entry : weights.entrySet()) {
+				double weight = requireNonNull(entry.getValue(), "weight cannot be null").doubleValue();
+
+				if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+					throw new IllegalArgumentException("invalid weight for state '"+entry.getKey()+"': "+weight);
+				}
+
+				states[i] = entry.getKey();
+				this.weights[i++] = weight;
+				total += weight;
+			}
+
+			empty = total == 0;
+
+			if (empty) {
+				return;
+			}
+
+			// scale so that the average column is exactly full
+			double[] scaled = new double[n];
+			int[] small = new int[n];
+			int[] large = new int[n];
+			int smallCount = 0, largeCount = 0;
+
+			for (i=0; i < n; ++i) {
+				scaled[i] = this.weights[i] * n / total;
+
+				if (scaled[i] < 1.0) {
+					small[smallCount++] = i;
+				} else {
+					large[largeCount++] = i;
+				}
+			}
+
+			// top up each small column from a large one
+			while (smallCount > 0 && largeCount > 0) {
+				int less = small[--smallCount];
+				int more = large[--largeCount];
+
+				probability[less] = scaled[less];
+				alias[less] = more;
+				scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+
+				if (scaled[more] < 1.0) {
+					small[smallCount++] = more;
+				} else {
+					large[largeCount++] = more;
+				}
+			}
+
+			// whatever is left over is full, give or take rounding
+			while (largeCount > 0) {
+				probability[large[--largeCount]] = 1.0;
+			}
+
+			while (smallCount > 0) {
+				probability[small[--smallCount]] = 1.0;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		T sample(T otherwise) {
+			if (empty) {
+				return otherwise;
+			}
+
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int column = random.nextInt(states.length);
+
+			return (T) (random.nextDouble() < probability[column] ? states[column] : states[alias[column]]);
+		}
+
+		@SuppressWarnings("unchecked")
+		Map<T, Number> weights() {
+			Map<T, Number> copy = new LinkedHashMap<>();
+
+			for (int i=0; i < states.length; ++i) {
+				copy.put((T) states[i], weights[i]);
+			}
+
+			return copy;
+		}
+	}
+}
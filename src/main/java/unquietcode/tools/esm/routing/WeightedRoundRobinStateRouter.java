@@ -0,0 +1,144 @@
+/*******************************************************************************
+ The MIT License (MIT)
+
+ Copyright (c) 2026 jstate contributors
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy of
+ this software and associated documentation files (the "Software"), to deal in
+ the Software without restriction, including without limitation the rights to
+ use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ the Software, and to permit persons to whom the Software is furnished to do so,
+ subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+
+package unquietcode.tools.esm.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Routes to each of the states in turn, as many times per round as its
+ * weight. The turns are interleaved rather than grouped together, so with
+ * weights of 5, 1 and 1 for A, B and C a round goes A A B A C A A.
+ *
+ * Each turn takes time in proportion to the number of states, no matter
+ * how large the weights are, and holds a lock only while picking. The
+ * weights can be updated at any time, which starts a new round.
+ *
+ * @version 10-18-2026
+ */
+public class WeightedRoundRobinStateRouter<T> implements StateRouter<T> {
+	private volatile Round<T> round;
+
+	/**
+	 * @param weights the number of turns each state gets per round
+	 */
+	public WeightedRoundRobinStateRouter(Map<T, Integer> weights) {
+		setWeights(weights);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T route(T current, T next) {
+		Object chosen = round.next();
+		return chosen != null ? (T) chosen : next;
+	}
+
+	/**
+	 * Replaces all of the weights at once.
+	 *
+	 * @param weights the number of turns each state gets per round
+	 */
+	public synchronized void setWeights(Map<T, Integer> weights) {
+		round = new Round<>(new LinkedHashMap<>(requireNonNull(weights)));
+	}
+
+	/**
+	 * Changes the weight of a single state, adding the state if it is
+	 * not already present. A weight of 0 stops it from being chosen.
+	 *
+	 * @param state the state to update
+	 * @param weight the number of turns per round
+	 */
+	public synchronized void setWeight(T state, int weight) {
+		Map<T, Integer> weights = new LinkedHashMap<>(round.weights);
+		weights.put(state, weight);
+		round = new Round<>(weights);
+	}
+
+	/**
+	 * @return a copy of the current weights
+	 */
+	public Map<T, Integer> getWeights() {
+		return new LinkedHashMap<>(round.weights);
+	}
+
+	/*
+		Smooth weighted round robin. On each turn every state gains its
+		weight, the state with the most is chosen, and it pays back the
+		total. The credits are updated in place, under the round's lock.
+	 */
+	private static final class Round<T> {
+		final Map<T, Integer> weights;
+		private final Object[] states;
+		private final int[] weighted;
+		private final long total;
+		private final long[] credit;
+
+		Round(Map<T, Integer> weights) {
+			this.weights = weights;
+			states = new Object[weights.size()];
+			weighted = new int[weights.size()];
+			credit = new long[weights.size()];
+
+			long total = 0;
+			int i = 0;
+
+			for (Map.Entry<T, Integer> entry : weights.entrySet()) {
+				int weight = requireNonNull(entry.getValue(), "weight cannot be null");
+
+				if (weight < 0) {
+					throw new IllegalArgumentException("invalid weight for state '"+entry.getKey()+"': "+weight);
+				}
+
+				states[i] = entry.getKey();
+				weighted[i++] = weight;
+				total += weight;
+			}
+
+			this.total = total;
+		}
+
+		// the state whose turn it is, or null if there are no weights
+		synchronized Object next() {
+			if (total == 0) {
+				return null;
+			}
+
+			int best = -1;
+
+			for (int i=0; i < credit.length; ++i) {
+				credit[i] += weighted[i];
+
+				if (weighted[i] != 0 && (best == -1 || credit[i] > credit[best])) {
+					best = i;
+				}
+			}
+
+			credit[best] -= total;
+			return states[best];
+		}
+	}
+}
@@ -35,6 +35,9 @@ public interface SequenceHandler<T> {
 	/**
 	 * Handle a match of the given sequence.
 	 *
+	 * The list is a read-only view of the recent states, which is
+	 * reused between matches. Copy it if it needs to be kept around.
+	 *
 	 * @param pattern the pattern which was matched
 	 */
 	void onMatch(List<T> pattern);
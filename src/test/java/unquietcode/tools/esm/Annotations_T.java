@@ -0,0 +1,171 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+import unquietcode.tools.esm.annotations.BindingsProcessor;
+import unquietcode.tools.esm.annotations.OnEntering;
+import unquietcode.tools.esm.annotations.OnExiting;
+import unquietcode.tools.esm.annotations.OnTransition;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Annotations_T {
+
+	@Test
+	public void testGeneratedBindings() {
+		Light light = new Light();
+
+		light.transition("green");
+		light.transition("yellow");
+		light.transition("red");
+		light.transition("green");
+
+		assertEquals(2, light.go);
+		assertEquals(2, light.stop);
+		assertEquals(4, light.entering);
+		assertEquals("red->green green->yellow yellow->red red->green ", light.transitions.toString());
+	}
+
+	@Test
+	public void testRejectsOtherStateMachines() {
+		List<String> errors = compile("Lights",
+			"import unquietcode.tools.esm.annotations.OnEntering;\n" +
+			"public class Lights extends unquietcode.tools.esm.EnumStateMachine<Lights.Color> {\n" +
+			"	enum Color { Red, Green }\n" +
+			"	public Lights() { super(Color.Red); }\n" +
+			"	@OnEntering(\"Green\") void go() { }\n" +
+			"}\n"
+		);
+
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("state machine of strings"));
+	}
+
+	@Test
+	public void testRejectsWrongParameterTypes() {
+		List<String> errors = compile("Lights",
+			"import unquietcode.tools.esm.annotations.OnEntering;\n" +
+			"import unquietcode.tools.esm.annotations.OnTransition;\n" +
+			"public class Lights extends unquietcode.tools.esm.StringStateMachine {\n" +
+			"	public Lights() { super(\"red\"); }\n" +
+			"	@OnEntering(\"green\") void go(Integer state) { }\n" +
+			"	@OnTransition void changed(CharSequence from, StringBuilder to) { }\n" +
+			"}\n"
+		);
+
+		assertEquals(2, errors.size());
+
+		for (String error : errors) {
+			assertTrue(error, error.contains("must accept a String"));
+		}
+	}
+
+	@Test
+	public void testAcceptsStringStateMachines() {
+		List<String> errors = compile("Lights",
+			"import unquietcode.tools.esm.annotations.OnEntering;\n" +
+			"public class Lights extends unquietcode.tools.esm.StringStateMachine {\n" +
+			"	public Lights() { super(\"red\"); Lights_Bindings.bind(this); }\n" +
+			"	@OnEntering(\"green\") void go(Object state) { }\n" +
+			"}\n"
+		);
+
+		assertEquals(Collections.emptyList(), errors);
+	}
+
+	// compiles the source with the processor, returning the error messages
+	private static List<String> compile(String className, String source) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertNotNull("a JDK is needed to run the processor", compiler);
+
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///"+className+".java"), JavaFileObject.Kind.SOURCE) {
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		// generated sources and classes are kept in memory
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(diagnostics, null, null)) {
+			public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("memory:///"+name.replace('.', '/')+kind.extension), kind) {
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+					public OutputStream openOutputStream() {
+						return bytes;
+					}
+
+					public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+						return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+					}
+				};
+			}
+		};
+
+		StringWriter output = new StringWriter();
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"));
+
+		JavaCompiler.CompilationTask task = compiler.getTask(output, files, diagnostics, options, null, Collections.singletonList(file));
+		task.setProcessors(Collections.singletonList(new BindingsProcessor()));
+		task.call();
+
+		List<String> errors = new ArrayList<>();
+
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic.getMessage(null));
+			}
+		}
+
+		return errors;
+	}
+
+	public static class Light extends StringStateMachine {
+		int go = 0;
+		int stop = 0;
+		int entering = 0;
+		final StringBuilder transitions = new StringBuilder();
+
+		public Light() {
+			super("red");
+			addTransition("red", "green");
+			addTransition("green", "yellow");
+			addTransition("yellow", "red");
+			Annotations_T_Light_Bindings.bind(this);
+		}
+
+		@OnEntering("Green")
+		void go(String state) {
+			assertEquals("green", state);
+			go += 1;
+		}
+
+		@OnExiting({"yellow", "green"})
+		void stop() {
+			stop += 1;
+		}
+
+		@OnEntering
+		void entering() {
+			entering += 1;
+		}
+
+		@OnTransition
+		void transition(String from, String to) {
+			transitions.append(from).append("->").append(to).append(" ");
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package unquietcode.tools.esm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class BinaryFormat_T {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testStringMachine() throws Exception {
+		StringStateMachine sm1 = new StringStateMachine("one");
+		sm1.addTransitions("one", "two", "three");
+		sm1.addTransitions("two", "one");
+		sm1.addTransitions("three", "three", "caf\u00e9");
+		sm1.addTransitions("caf\u00e9", (String) null);
+
+		byte[] definition = StateMachineBinaryFormat.writeStateMachine(sm1);
+
+		StringStateMachine sm2 = new StringStateMachine();
+		StateMachineBinaryFormat.configureStateMachine(String.class, new ByteArrayInputStream(definition), sm2);
+
+		assertEquals(sm1.toString(), sm2.toString());
+		assertEquals("one", sm2.currentState());
+		assertTrue(sm2.transition("three"));
+		assertTrue(sm2.transition("caf\u00e9"));
+		assertTrue(sm2.transition(null));
+	}
+
+	@Test
+	public void testEnumMachineFromFile() throws Exception {
+		EnumStateMachine<Color> sm1 = new EnumStateMachine<>(Color.Red);
+		sm1.addAllTransitions(Arrays.asList(Color.values()), false);
+
+		Path file = folder.newFile("colors.bin").toPath();
+		Files.write(file, StateMachineBinaryFormat.writeStateMachine(sm1));
+
+		EnumStateMachine<Color> sm2 = new EnumStateMachine<>(Color.Green);
+		StateMachineBinaryFormat.configureStateMachine(Color.class, file, sm2);
+
+		assertEquals(sm1.toString(), sm2.toString());
+		assertEquals(Color.Red, sm2.currentState());
+		assertTrue(sm2.transition(Color.Blue));
+		assertTrue(sm2.transition(Color.Green));
+	}
+
+	@Test
+	public void testLargeMachine() throws Exception {
+		final int states = 5000;
+		StringStateMachine sm1 = new StringStateMachine("state0");
+
+		for (int i=0; i < states; ++i) {
+			sm1.addTransitions("state"+i, "state"+((i + 1) % states), "state"+((i + 7) % states));
+		}
+
+		StringStateMachine sm2 = new StringStateMachine();
+		StateMachineBinaryFormat.configureStateMachine(String.class, StateMachineBinaryFormat.writeStateMachine(sm1), sm2);
+
+		for (int i=1; i <= states; ++i) {
+			assertTrue(sm2.transition("state"+(i % states)));
+		}
+	}
+
+	@Test
+	public void testCorruptDefinitions() {
+		byte[] definition = StateMachineBinaryFormat.writeStateMachine(new StringStateMachine("one"));
+
+		for (byte[] corrupt : Arrays.asList(
+			Arrays.copyOf(definition, definition.length - 1),
+			"JSON".getBytes(),
+			new byte[] { 'J', 'S', 'M', 'B', 99 }
+		)) {
+			try {
+				StateMachineBinaryFormat.configureStateMachine(String.class, corrupt, new StringStateMachine());
+				fail("expected an exception");
+			} catch (StreamCorruptedException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptCountsAndLengths() {
+		for (byte[] corrupt : Arrays.asList(
+
+			// negative state count
+			definition(0xFF, 0xFF, 0xFF, 0xFF, 0x0F),
+
+			// huge state count
+			definition(0xFF, 0xFF, 0xFF, 0xFF, 0x07, 0, 0, 0, 0),
+
+			// name longer than what is left
+			definition(1, 0x7F, 'a', 0, 0),
+
+			// negative name length
+			definition(1, 0x80, 0x80, 0x80, 0x80, 0x08, 0, 0),
+
+			// negative edge count
+			definition(1, 2, 'a', 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F),
+
+			// more edges than states
+			definition(1, 2, 'a', 0, 2, 0, 0),
+
+			// huge edge count
+			definition(2, 2, 'a', 2, 'b', 0, 0x80, 0x80, 0x80, 0x40, 0)
+		)) {
+			try {
+				StateMachineBinaryFormat.configureStateMachine(String.class, corrupt, new StringStateMachine());
+				fail("expected an exception");
+			} catch (StreamCorruptedException e) {
+				// expected
+			}
+		}
+	}
+
+	// the header, followed by the given bytes
+	private static byte[] definition(int...bytes) {
+		byte[] definition = new byte[5 + bytes.length];
+		System.arraycopy("JSMB".getBytes(), 0, definition, 0, 4);
+		definition[4] = 1;
+
+		for (int i=0; i < bytes.length; ++i) {
+			definition[5 + i] = (byte) bytes[i];
+		}
+
+		return definition;
+	}
+
+	public enum Color implements State {
+		Red, Blue, Green
+	}
+}
@@ -0,0 +1,136 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class DelayedTransitions_T {
+
+	@Test
+	public void testTransitionAfter() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+
+		long start = System.nanoTime();
+		Future<Boolean> result = esm.transitionAfter(Light.Green, Duration.ofMillis(50));
+		assertEquals(Light.Red, esm.currentState());
+
+		assertTrue(result.get(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(Light.Green, esm.currentState());
+	}
+
+	@Test
+	public void testTransitionAt() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+
+		assertTrue(esm.transitionAt(Light.Green, Instant.now().plusMillis(20)).get(5, TimeUnit.SECONDS));
+
+		// already passed, so right away
+		assertTrue(esm.transitionAt(Light.Yellow, Instant.now().minusSeconds(1)).get(5, TimeUnit.SECONDS));
+		assertEquals(Light.Yellow, esm.currentState());
+	}
+
+	@Test
+	public void testCancelling() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+
+		Future<Boolean> result = esm.transitionAfter(Light.Green, Duration.ofMillis(50));
+		assertTrue(result.cancel(false));
+		assertTrue(result.isCancelled());
+
+		Thread.sleep(200);
+		assertEquals(Light.Red, esm.currentState());
+	}
+
+	@Test(expected=CancellationException.class)
+	public void testStaleAfterTransition() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+
+		Future<Boolean> result = esm.transitionAfter(Light.Green, Duration.ofSeconds(60));
+		esm.transition(Light.Yellow);
+
+		assertTrue(result.isCancelled());
+		result.get(1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testNotStaleAfterSelfTransition() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+		esm.addTransition(Light.Red, Light.Red);
+
+		Future<Boolean> result = esm.transitionAfter(Light.Green, Duration.ofMillis(50));
+		esm.transition(Light.Red);
+		assertFalse(result.isCancelled());
+
+		assertTrue(result.get(5, TimeUnit.SECONDS));
+		assertEquals(Light.Green, esm.currentState());
+	}
+
+	@Test
+	public void testFarFuture() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+
+		Future<Boolean> at = esm.transitionAt(Light.Green, Instant.MAX);
+		Future<Boolean> after = esm.transitionAfter(Light.Green, Duration.ofSeconds(Long.MAX_VALUE));
+
+		Thread.sleep(50);
+		assertFalse(at.isDone());
+		assertFalse(after.isDone());
+		assertEquals(Light.Red, esm.currentState());
+
+		assertTrue(at.cancel(false));
+		assertTrue(after.cancel(false));
+	}
+
+	@Test
+	public void testStaleAfterReset() throws Exception {
+		EnumStateMachine<Light> esm = new EnumStateMachine<>(Light.Red);
+		esm.addAll(Light.class, false);
+
+		Future<Boolean> result = esm.transitionAfter(Light.Green, Duration.ofMillis(50));
+		esm.reset();
+		assertTrue(result.isCancelled());
+
+		Thread.sleep(200);
+		assertEquals(Light.Red, esm.currentState());
+		assertEquals(0, esm.transitionCount());
+	}
+
+	@Test
+	public void testFiredTransitionsAreForgotten() throws Exception {
+		GenericStateMachine<Signal> sm = new GenericStateMachine<>(Signal.Red);
+		sm.addTransition(Signal.Red, Signal.Red);
+		sm.addTransition(Signal.Red, Signal.Green);
+
+		// staying in the same state never makes them stale
+		for (int i=0; i < 100; ++i) {
+			assertFalse(sm.transitionAfter(Signal.Red, Duration.ZERO).get(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals(0, sm.delayedCount());
+
+		Future<Boolean> cancelled = sm.transitionAfter(Signal.Green, Duration.ofSeconds(60));
+		assertEquals(1, sm.delayedCount());
+		cancelled.cancel(false);
+		assertEquals(0, sm.delayedCount());
+	}
+
+	enum Light { Red, Green, Yellow }
+
+	public enum Signal implements State { Red, Green }
+}
@@ -3,8 +3,19 @@ package unquietcode.tools.esm;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -253,6 +264,201 @@ public class EnumStateMachine_T {
 		Assert.assertTrue(t2.isCancelled());
 	}
 
+	@Test
+	public void independentHandlersCompleteBeforeCommit() {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+		final AtomicInteger counter = new AtomicInteger();
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+		// both entry handlers have to be running at once to get past this
+		final CyclicBarrier together = new CyclicBarrier(2);
+
+		IndependentStateHandler<State> entering = state -> {
+			threads.add(Thread.currentThread());
+
+			try {
+				together.await(5, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				Assert.fail(e.toString());
+			}
+			counter.incrementAndGet();
+		};
+
+		IndependentTransitionHandler<State> transitioning = (from, to) -> {
+			threads.add(Thread.currentThread());
+			counter.incrementAndGet();
+		};
+
+		esm.onEntering(State.Running, entering);
+		esm.onEntering(entering);
+		esm.onTransition(transitioning);
+
+		esm.transition(State.Running);
+
+		Assert.assertEquals(3, counter.get());
+		Assert.assertEquals(State.Running, esm.currentState());
+		Assert.assertFalse(threads.contains(Thread.currentThread()));
+	}
+
+	@Test
+	public void independentHandlersUseGivenExecutor() {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+		final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "independent"));
+		final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+		esm.setIndependentExecutor(executor);
+		esm.onEntering((IndependentStateHandler<State>) state -> threads.add(Thread.currentThread().getName()));
+		esm.onTransition((IndependentTransitionHandler<State>) (from, to) -> threads.add(Thread.currentThread().getName()));
+
+		try {
+			esm.transition(State.Running);
+		} finally {
+			executor.shutdown();
+		}
+
+		Assert.assertEquals(Collections.singleton("independent"), threads);
+	}
+
+	@Test(expected=TransitionException.class)
+	public void synchronousTransitionFromIndependentHandler() {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+
+		// would otherwise wait forever on the transition which is waiting on it
+		esm.onEntering(State.Running, (IndependentStateHandler<State>) state -> esm.transition(State.Finished));
+
+		try {
+			esm.transition(State.Running);
+		} finally {
+			Assert.assertEquals(State.Ready, esm.currentState());
+		}
+	}
+
+	@Test(expected=TransitionException.class)
+	public void independentHandlerFailure() {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+
+		esm.onExiting(State.Ready, (IndependentStateHandler<State>) state -> {
+			throw new TransitionException("handler failed");
+		});
+
+		try {
+			esm.transition(State.Running);
+		} finally {
+			Assert.assertEquals(State.Ready, esm.currentState());
+		}
+	}
+
+	@Test
+	public void asyncHandlersDoNotBlockTheMachine() throws Exception {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+		final CountDownLatch exiting = new CountDownLatch(1);
+		final AtomicInteger entered = new AtomicInteger();
+
+		esm.onExiting(State.Ready, (AsyncStateHandler<State>) state -> {
+			exiting.countDown();
+			return gate;
+		});
+
+		esm.onEntering(State.Running, state -> entered.incrementAndGet());
+
+		Future<Boolean> t1 = esm.transitionAsync(State.Running);
+		Future<Boolean> t2 = esm.transitionAsync(State.Paused);
+		Assert.assertTrue(exiting.await(5, TimeUnit.SECONDS));
+
+		// still in the original state, and waiting on the exit handler
+		Assert.assertEquals(State.Ready, esm.currentState());
+		Assert.assertEquals(0, esm.transitionCount());
+		Assert.assertEquals(0, entered.get());
+		Assert.assertFalse(t1.isDone());
+		Assert.assertFalse(t2.isDone());
+
+		gate.complete(null);
+		Assert.assertTrue(t1.get(5, TimeUnit.SECONDS));
+		Assert.assertTrue(t2.get(5, TimeUnit.SECONDS));
+
+		Assert.assertEquals(1, entered.get());
+		Assert.assertEquals(State.Paused, esm.currentState());
+		Assert.assertEquals(2, esm.transitionCount());
+	}
+
+	@Test
+	public void resetWhileWaitingOnAsyncHandler() throws Exception {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+		final CountDownLatch entering = new CountDownLatch(1);
+
+		esm.onEntering(State.Running, (AsyncStateHandler<State>) state -> {
+			entering.countDown();
+			return gate;
+		});
+
+		Future<Boolean> result = esm.transitionAsync(State.Running);
+		Assert.assertTrue(entering.await(5, TimeUnit.SECONDS));
+
+		esm.reset();
+		gate.complete(null);
+
+		// the transition is abandoned rather than committed
+		try {
+			result.get(5, TimeUnit.SECONDS);
+			Assert.fail("expected the transition to be cancelled");
+		} catch (CancellationException e) {
+			// expected
+		}
+
+		Assert.assertEquals(State.Ready, esm.currentState());
+		Assert.assertEquals(0, esm.transitionCount());
+
+		// and the machine carries on as usual
+		Assert.assertTrue(esm.transition(State.Finished));
+	}
+
+	@Test
+	public void asyncHandlerFailure() throws Exception {
+		final EnumStateMachine<State> esm = getThreadLikeMachine();
+		final CompletableFuture<Void> gate = new CompletableFuture<>();
+
+		esm.onTransition((AsyncTransitionHandler<State>) (from, to) -> gate);
+
+		Future<Boolean> t1 = esm.transitionAsync(State.Running);
+		Future<Boolean> t2 = esm.transitionAsync(State.Paused);
+		gate.completeExceptionally(new TransitionException("transition failed"));
+
+		try {
+			t1.get(5, TimeUnit.SECONDS);
+			Assert.fail("expected an exception");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TransitionException);
+		}
+
+		Assert.assertEquals(State.Ready, esm.currentState());
+		Assert.assertTrue(t2.isCancelled());
+	}
+
+	@Test
+	public void resolveStatesByName() {
+		EnumStateMachine<State> esm = new EnumStateMachine<>(State.Ready);
+
+		Assert.assertEquals(State.Paused, esm.getState("Paused"));
+		Assert.assertNull(esm.getState("null"));
+		Assert.assertEquals(
+			Arrays.asList(State.Running, null, State.Stopped),
+			esm.resolveStates(Arrays.asList("Running", "null", "Stopped"))
+		);
+
+		try {
+			esm.getState("paused");
+			Assert.fail("expected an exception");
+		} catch (RuntimeException ex) {
+			// expected
+		}
+
+		esm.setIgnoreCase(true);
+		Assert.assertEquals(State.Paused, esm.getState("paused"));
+		Assert.assertEquals(State.Paused, esm.getState("PAUSED"));
+	}
+
 
 	// ---------------------------------------------------------- //
 
@@ -0,0 +1,102 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Events_T {
+
+	@Test
+	public void testFiringEvents() {
+		EnumStateMachine<Player> esm = new EnumStateMachine<>(Player.Stopped);
+		esm.on(Action.Play).from(Player.Stopped, Player.Paused).to(Player.Playing);
+		esm.on(Action.Pause).from(Player.Playing).to(Player.Paused);
+		esm.on(Action.Stop).from(Player.Playing, Player.Paused).to(Player.Stopped);
+
+		final List<Player> entered = new ArrayList<>();
+		esm.onEntering(entered::add);
+
+		assertTrue(esm.fire(Action.Play));
+		assertTrue(esm.fire(Action.Pause));
+		assertTrue(esm.fire(Action.Play));
+		assertTrue(esm.fire(Action.Stop));
+
+		// not handled when stopped
+		assertFalse(esm.fire(Action.Pause));
+		assertFalse(esm.fire(Action.Stop));
+
+		assertEquals(Player.Stopped, esm.currentState());
+		assertEquals(Arrays.asList(Player.Playing, Player.Paused, Player.Playing, Player.Stopped), entered);
+		assertEquals(4, esm.transitionCount());
+	}
+
+	@Test
+	public void testQueuedEventsUseCurrentState() throws Exception {
+		StringStateMachine sm = new StringStateMachine("off");
+		sm.on("toggle").from("off").to("on");
+		sm.on("toggle").from("on").to("off");
+
+		List<Future<Boolean>> results = new ArrayList<>();
+
+		for (int i=0; i < 5; ++i) {
+			results.add(sm.fireAsync("toggle"));
+		}
+
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+
+		assertEquals("on", sm.currentState());
+		assertFalse(sm.fireAsync("unknown").get());
+	}
+
+	@Test
+	public void testEventsAreRouted() {
+		EnumStateMachine<Player> esm = new EnumStateMachine<>(Player.Stopped);
+		esm.addTransition(Player.Stopped, Player.Paused);
+		esm.on(Action.Play).from(Player.Stopped).to(Player.Playing);
+
+		final List<Object> payloads = new ArrayList<>();
+		esm.onEntering(Player.Paused, (PayloadStateHandler<Player, String>) (state, payload) -> payloads.add(payload));
+
+		// start paused instead
+		esm.routeBeforeEntering(Player.Playing, (current, next) -> Player.Paused);
+
+		assertTrue(esm.fire(Action.Play, "track"));
+		assertEquals(Player.Paused, esm.currentState());
+		assertEquals(Arrays.asList("track"), payloads);
+	}
+
+	@Test
+	public void testFiringAfterRemovingTransition() {
+		EnumStateMachine<Player> esm = new EnumStateMachine<>(Player.Stopped);
+		esm.on(Action.Play).from(Player.Stopped, Player.Paused).to(Player.Playing);
+		esm.addTransition(Player.Stopped, Player.Paused);
+
+		esm.removeTransitions(Player.Stopped, Player.Playing);
+
+		// no longer handled when stopped, but still when paused
+		assertFalse(esm.fire(Action.Play));
+		assertEquals(Player.Stopped, esm.currentState());
+
+		esm.transition(Player.Paused);
+		assertTrue(esm.fire(Action.Play));
+		assertEquals(Player.Playing, esm.currentState());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testMissingFromStates() {
+		new StringStateMachine("a").on("go").to("b");
+	}
+
+	enum Player { Stopped, Playing, Paused }
+	enum Action { Play, Pause, Stop }
+}
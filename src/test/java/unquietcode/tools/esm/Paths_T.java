@@ -0,0 +1,121 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Paths_T {
+
+	@Test
+	public void testShortestPath() {
+		EnumStateMachine<Stop> sm = line();
+		final List<Stop> entered = new ArrayList<>();
+		sm.onEntering(entered::add);
+
+		assertTrue(sm.transitionTo(Stop.E));
+		assertEquals(Stop.E, sm.currentState());
+		assertEquals(Arrays.asList(Stop.B, Stop.C, Stop.E), entered);
+		assertEquals(3, sm.transitionCount());
+
+		// already there
+		assertFalse(sm.transitionTo(Stop.E));
+		assertEquals(3, sm.transitionCount());
+	}
+
+	@Test
+	public void testGraphChanges() {
+		EnumStateMachine<Stop> sm = line();
+		assertTrue(sm.transitionTo(Stop.E));
+
+		// the shortcut is gone, so go the long way around
+		sm.removeTransitions(Stop.C, Stop.E);
+		assertTrue(sm.transitionTo(Stop.E));
+		assertEquals(4, sm.transitionCount());
+
+		// and then a new shortcut
+		sm.addTransition(Stop.A, Stop.E);
+		assertTrue(sm.transitionTo(Stop.E));
+		assertEquals(1, sm.transitionCount());
+	}
+
+	@Test(expected=TransitionException.class)
+	public void testNoPath() {
+		EnumStateMachine<Stop> sm = line();
+		sm.transitionTo(Stop.F);
+	}
+
+	@Test
+	public void testRouterRedirects() {
+		EnumStateMachine<Stop> sm = line();
+		sm.addTransition(Stop.B, Stop.D);
+
+		// avoid C
+		sm.routeBeforeEntering(Stop.C, (current, next) -> Stop.D);
+
+		final List<Stop> entered = new ArrayList<>();
+		sm.onEntering(entered::add);
+
+		assertTrue(sm.transitionTo(Stop.E));
+		assertEquals(Arrays.asList(Stop.B, Stop.D, Stop.E), entered);
+	}
+
+	@Test
+	public void testQueuedWithOtherTransitions() throws Exception {
+		EnumStateMachine<Stop> sm = line();
+
+		sm.transitionAsync(Stop.B);
+		sm.transitionToAsync(Stop.A);
+		assertTrue(sm.transitionToAsync(Stop.C).get());
+		assertEquals(Stop.C, sm.currentState());
+		assertEquals(6, sm.transitionCount());
+	}
+
+	@Test
+	public void testHopLimitOnlyFailsItsOwnTransition() throws Exception {
+		EnumStateMachine<Stop> sm = line();
+		sm.addTransition(Stop.A, Stop.A);
+
+		// keeps sending the first hop back where it started
+		sm.routeBeforeEntering(Stop.B, (current, next) -> Stop.A);
+
+		Future<Boolean> lost = sm.transitionToAsync(Stop.E);
+		Future<Boolean> queued = sm.transitionAsync(Stop.A);
+
+		try {
+			lost.get(5, TimeUnit.SECONDS);
+			fail("expected an exception");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TransitionException);
+		}
+
+		assertFalse(queued.get(5, TimeUnit.SECONDS));
+		assertEquals(Stop.A, sm.currentState());
+	}
+
+	// A -> B -> C -> D -> E -> A, with a shortcut from C to E
+	private static EnumStateMachine<Stop> line() {
+		EnumStateMachine<Stop> sm = new EnumStateMachine<>(Stop.A);
+		sm.addTransition(Stop.A, Stop.B);
+		sm.addTransition(Stop.B, Stop.C);
+		sm.addTransition(Stop.C, Stop.D);
+		sm.addTransition(Stop.C, Stop.E);
+		sm.addTransition(Stop.D, Stop.E);
+		sm.addTransition(Stop.E, Stop.A);
+		sm.addTransition(Stop.F, Stop.A);
+		return sm;
+	}
+
+	public enum Stop implements State {
+		A, B, C, D, E, F
+	}
+}
@@ -0,0 +1,116 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+import unquietcode.tools.esm.routing.PayloadStateRouter;
+import unquietcode.tools.esm.routing.PureStateRouter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Payload_T {
+
+	@Test
+	public void testHandlersReceivePayload() {
+		EnumStateMachine<Door> esm = new EnumStateMachine<>(Door.Closed);
+		esm.addAll(Door.class, true);
+
+		final List<Object> seen = new ArrayList<>();
+
+		esm.onExiting(Door.Closed, (PayloadStateHandler<Door, String>) (state, payload) -> seen.add("exit " + payload));
+		esm.onTransition(Door.Closed, Door.Open, (PayloadTransitionHandler<Door, String>) (from, to, payload) -> seen.add("transition " + payload));
+		esm.onEntering(Door.Open, (PayloadStateHandler<Door, String>) (state, payload) -> seen.add("enter " + payload));
+
+		// plain handlers are called as usual
+		esm.onEntering(Door.Open, state -> seen.add(state));
+
+		assertTrue(esm.transition(Door.Open, "key"));
+		assertEquals(Arrays.asList("exit key", "transition key", "enter key", Door.Open), seen);
+
+		// without a payload the handlers see null
+		seen.clear();
+		esm.transition(Door.Closed);
+		esm.transition(Door.Open);
+		assertEquals(Arrays.asList("exit null", "transition null", "enter null", Door.Open), seen);
+	}
+
+	@Test
+	public void testAsyncHandlersReceivePayload() {
+		EnumStateMachine<Door> esm = new EnumStateMachine<>(Door.Closed);
+		esm.addAll(Door.class, true);
+
+		final List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+
+		esm.onExiting(Door.Closed, (PayloadAsyncStateHandler<Door, String>) (state, payload) -> {
+			return CompletableFuture.runAsync(() -> seen.add("exit " + payload));
+		});
+
+		esm.onTransition(Door.Closed, Door.Open, (PayloadAsyncTransitionHandler<Door, String>) (from, to, payload) -> {
+			return CompletableFuture.runAsync(() -> seen.add("transition " + payload));
+		});
+
+		// plain asynchronous handlers are called as usual
+		esm.onEntering(Door.Open, (AsyncStateHandler<Door>) state -> {
+			return CompletableFuture.runAsync(() -> seen.add(state));
+		});
+
+		assertTrue(esm.transition(Door.Open, "key"));
+		assertEquals(Arrays.asList("exit key", "transition key", Door.Open), seen);
+	}
+
+	@Test
+	public void testRoutersReceivePayload() throws Exception {
+		EnumStateMachine<Door> esm = new EnumStateMachine<>(Door.Closed);
+		esm.addAll(Door.class, true);
+
+		// only open the door with the right key
+		esm.routeBeforeEntering(Door.Open, (PayloadStateRouter<Door, String>) (current, next, payload) -> {
+			return "key".equals(payload) ? null : Door.Locked;
+		});
+
+		esm.transition(Door.Open, "hairpin");
+		assertEquals(Door.Locked, esm.currentState());
+
+		Future<Boolean> result = esm.transitionAsync(Door.Open, "key");
+		assertTrue(result.get());
+		assertEquals(Door.Open, esm.currentState());
+	}
+
+	@Test
+	public void testPayloadRoutersAreNotMemoized() {
+		EnumStateMachine<Door> esm = new EnumStateMachine<>(Door.Closed);
+		esm.addAll(Door.class, true);
+
+		final AtomicInteger pureCalls = new AtomicInteger(0);
+		final List<Integer> payloads = Collections.synchronizedList(new ArrayList<>());
+
+		esm.routeBeforeEntering(Door.Open, (PureStateRouter<Door>) (current, next) -> {
+			pureCalls.incrementAndGet();
+			return null;
+		});
+
+		esm.routeBeforeEntering(Door.Open, (PayloadStateRouter<Door, Integer>) (current, next, payload) -> {
+			payloads.add(payload);
+			return null;
+		});
+
+		for (int i=0; i < 3; ++i) {
+			esm.transition(Door.Open, i);
+			esm.transition(Door.Closed);
+		}
+
+		assertEquals(Arrays.asList(0, 1, 2), payloads);
+		assertEquals(3, pureCalls.get());
+	}
+
+	enum Door { Open, Closed, Locked }
+}
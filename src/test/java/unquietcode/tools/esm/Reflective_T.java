@@ -2,6 +2,8 @@ package unquietcode.tools.esm;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
@@ -84,6 +86,71 @@ public class Reflective_T {
 		sm.transition("blue");
 	}
 
+	@Test
+	public void testTransitionArguments() {
+		final StringBuilder transitions = new StringBuilder();
+
+		ReflectiveStateMachine sm = new ReflectiveStateMachine("blue") {
+
+			@Override
+			protected void declareTransitions() {
+				addTransition("blue", "green");
+				addTransition("green", "blue");
+			}
+
+			public void onTransition(String from, String to) {
+				transitions.append(from).append("->").append(to).append(" ");
+			}
+
+			private void onExitingGreen(String state) {
+				transitions.append("(").append(state).append(") ");
+			}
+		};
+
+		sm.transition("green");
+		sm.transition("blue");
+
+		assertEquals("blue->green (green) green->blue ", transitions.toString());
+	}
+
+	@Test
+	public void testManyInstances() {
+		List<CountingMachine> machines = new ArrayList<>();
+
+		for (int i=0; i < 100; ++i) {
+			machines.add(new CountingMachine());
+		}
+
+		for (CountingMachine sm : machines) {
+			sm.transition("blue");
+			sm.transition("green");
+		}
+
+		for (CountingMachine sm : machines) {
+			assertEquals(1, sm.enteringBlue);
+			assertEquals(2, sm.transitions);
+		}
+	}
+
+	public static class CountingMachine extends ReflectiveStateMachine {
+		int enteringBlue = 0;
+		int transitions = 0;
+
+		@Override
+		protected void declareTransitions() {
+			addTransition(null, "blue");
+			addTransition("blue", "green");
+		}
+
+		public void onBlue() {
+			enteringBlue += 1;
+		}
+
+		public void onTransition() {
+			transitions += 1;
+		}
+	}
+
 	private static class CustomException extends RuntimeException {
 		public CustomException(String msg) {
 			super(msg);
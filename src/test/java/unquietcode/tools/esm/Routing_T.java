@@ -2,9 +2,14 @@ package unquietcode.tools.esm;
 
 import org.junit.Assert;
 import org.junit.Test;
+import unquietcode.tools.esm.routing.PureStateRouter;
 import unquietcode.tools.esm.routing.RandomStateRouter;
 import unquietcode.tools.esm.routing.RoundRobinStateRouter;
+import unquietcode.tools.esm.routing.WeightedRandomStateRouter;
+import unquietcode.tools.esm.routing.WeightedRoundRobinStateRouter;
 
+import java.util.*;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
@@ -114,6 +119,82 @@ public class Routing_T {
 		assertEquals(4, c3.get());
 	}
 
+	@Test
+	public void testWeightedRoundRobin() {
+		Map<TestStates, Integer> weights = new LinkedHashMap<>();
+		weights.put(TestStates.One, 10);
+		weights.put(TestStates.Two, 2);
+		weights.put(TestStates.Three, 2);
+
+		WeightedRoundRobinStateRouter<TestStates> router = new WeightedRoundRobinStateRouter<>(weights);
+		List<TestStates> round = new ArrayList<>();
+
+		for (int i=0; i < 7; ++i) {
+			round.add(router.route(null, null));
+		}
+
+		// the turns are spread out
+		assertEquals(Arrays.asList(
+			TestStates.One, TestStates.One, TestStates.Two, TestStates.One,
+			TestStates.Three, TestStates.One, TestStates.One
+		), round);
+
+		router.setWeight(TestStates.One, 0);
+		Set<TestStates> chosen = EnumSet.noneOf(TestStates.class);
+
+		for (int i=0; i < 10; ++i) {
+			chosen.add(router.route(null, null));
+		}
+
+		assertEquals(EnumSet.of(TestStates.Two, TestStates.Three), chosen);
+	}
+
+	@Test
+	public void testLargeWeights() {
+		Map<TestStates, Integer> weights = new LinkedHashMap<>();
+		weights.put(TestStates.One, 700000);
+		weights.put(TestStates.Two, 700001);
+		weights.put(TestStates.Three, Integer.MAX_VALUE);
+
+		WeightedRoundRobinStateRouter<TestStates> router = new WeightedRoundRobinStateRouter<>(weights);
+		Map<TestStates, Integer> counts = new EnumMap<>(TestStates.class);
+
+		for (int i=0; i < 100000; ++i) {
+			counts.merge(router.route(null, null), 1, Integer::sum);
+		}
+
+		// mostly the heaviest, with the others taking turns in between
+		assertTrue(counts.get(TestStates.Three) > 99000);
+		assertEquals(counts.get(TestStates.One), counts.get(TestStates.Two), 1);
+	}
+
+	@Test
+	public void testRoundRobinAcrossThreads() throws Exception {
+		final RoundRobinStateRouter<TestStates> router = new RoundRobinStateRouter<>(TestStates.values());
+		final Map<TestStates, AtomicInteger> counts = new EnumMap<>(TestStates.class);
+
+		for (TestStates state : TestStates.values()) {
+			counts.put(state, new AtomicInteger());
+		}
+
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i=0; i < 4; ++i) {
+			threads.add(new Thread(() -> {
+				for (int j=0; j < 3000; ++j) {
+					counts.get(router.route(null, null)).incrementAndGet();
+				}
+			}));
+		}
+
+		for (Thread thread : threads) { thread.start(); }
+		for (Thread thread : threads) { thread.join(); }
+
+		for (AtomicInteger count : counts.values()) {
+			assertEquals(4000, count.get());
+		}
+	}
+
 	@Test
 	public void testRandomRedirect() {
 		EnumStateMachine<TestStates> esm = new EnumStateMachine<>(TestStates.One);
@@ -147,6 +228,122 @@ public class Routing_T {
 		assertTrue(Math.abs(c3.get()-c1.get()) < epsilon);
 	}
 
+	@Test
+	public void testWeightedRandomRouter() {
+		Map<TestStates, Integer> weights = new EnumMap<>(TestStates.class);
+		weights.put(TestStates.One, 1);
+		weights.put(TestStates.Two, 2);
+		weights.put(TestStates.Three, 7);
+
+		WeightedRandomStateRouter<TestStates> router = new WeightedRandomStateRouter<>(weights);
+		Map<TestStates, Integer> counts = sample(router, 100000);
+
+		assertEquals(0.1, counts.get(TestStates.One) / 100000.0, 0.02);
+		assertEquals(0.2, counts.get(TestStates.Two) / 100000.0, 0.02);
+		assertEquals(0.7, counts.get(TestStates.Three) / 100000.0, 0.02);
+
+		// stop choosing one of them
+		router.setWeight(TestStates.Three, 0);
+		counts = sample(router, 100000);
+
+		assertEquals(0, (int) counts.get(TestStates.Three));
+		assertEquals(1 / 3.0, counts.get(TestStates.One) / 100000.0, 0.02);
+
+		// nothing to choose from, so no preference
+		router.setWeight(TestStates.One, 0);
+		router.setWeight(TestStates.Two, 0);
+		assertEquals(null, router.route(TestStates.One, null));
+	}
+
+	private static Map<TestStates, Integer> sample(WeightedRandomStateRouter<TestStates> router, int samples) {
+		Map<TestStates, Integer> counts = new EnumMap<>(TestStates.class);
+
+		for (TestStates state : TestStates.values()) {
+			counts.put(state, 0);
+		}
+
+		for (int i=0; i < samples; ++i) {
+			counts.merge(router.route(TestStates.One, TestStates.Two), 1, Integer::sum);
+		}
+
+		return counts;
+	}
+
+	@Test
+	public void testPureRoutersAreMemoized() {
+		EnumStateMachine<TestStates> esm = new EnumStateMachine<>(TestStates.One);
+		esm.addAll(TestStates.class, true);
+
+		final AtomicInteger calls = new AtomicInteger(0);
+
+		// always skip Two
+		esm.routeBeforeEntering(TestStates.Two, (PureStateRouter<TestStates>) (current, next) -> {
+			calls.incrementAndGet();
+			return TestStates.Three;
+		});
+
+		for (int i=0; i < 5; ++i) {
+			esm.transition(TestStates.Two);
+			assertEquals(TestStates.Three, esm.currentState());
+			esm.transition(TestStates.One);
+		}
+
+		// only once for the same pair of states
+		assertEquals(1, calls.get());
+
+		// adding an impure router means asking every time
+		final AtomicInteger impureCalls = new AtomicInteger(0);
+
+		HandlerRegistration registration = esm.routeOnTransition((current, next) -> {
+			impureCalls.incrementAndGet();
+			return null;
+		});
+
+		esm.transition(TestStates.Two);
+		esm.transition(TestStates.Two);
+		assertEquals(3, calls.get());
+		assertEquals(2, impureCalls.get());
+
+		// and then back to remembering
+		registration.unregister();
+		esm.transition(TestStates.Two);
+		esm.transition(TestStates.Two);
+		assertEquals(4, calls.get());
+		assertEquals(2, impureCalls.get());
+	}
+
+	@Test
+	public void testQueuedTransitionsAreRoutedWhenRun() throws Exception {
+		EnumStateMachine<TestStates> esm = new EnumStateMachine<>(TestStates.One);
+		esm.addAll(TestStates.class, true);
+
+		final List<TestStates> seen = Collections.synchronizedList(new ArrayList<>());
+
+		esm.routeOnTransition((current, next) -> {
+			seen.add(current);
+			return null;
+		});
+
+		List<Future<Boolean>> results = new ArrayList<>();
+
+		for (int i=0; i < 10; ++i) {
+			results.add(esm.transitionAsync(TestStates.Two));
+			results.add(esm.transitionAsync(TestStates.Three));
+			results.add(esm.transitionAsync(TestStates.One));
+		}
+
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+
+		// every router saw the state left behind by the previous transition
+		for (int i=0; i < seen.size(); ++i) {
+			assertEquals(TestStates.values()[i % 3], seen.get(i));
+		}
+
+		assertEquals(30, seen.size());
+	}
+
 	@Test(expected=TransitionException.class)
 	public void testInvalidRoutingResult() {
 		EnumStateMachine<TestStates> esm = new EnumStateMachine<TestStates>();
@@ -4,6 +4,7 @@ import org.junit.Test;
 import unquietcode.tools.esm.sequences.Pattern;
 import unquietcode.tools.esm.sequences.PatternBuilder;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -135,6 +136,49 @@ public class Sequence_T {
 		assertEquals(1, counter2.get());
 	}
 
+	@Test
+	public void test_many_patterns_with_unregistration() {
+		EnumStateMachine<ZState> esm = new EnumStateMachine<>(ZState.One);
+		esm.addAll(ZState.class, true);
+
+		final int patternCount = 1000;
+		final AtomicInteger shortMatches = new AtomicInteger(0);
+		final AtomicInteger longMatches = new AtomicInteger(0);
+
+		List<HandlerRegistration> registrations = new ArrayList<>();
+		Pattern<ZState> shortPattern = PatternBuilder.<ZState>create().add(ZState.Two, ZState.Three).build();
+		Pattern<ZState> longPattern = PatternBuilder.<ZState>create()
+			.add(ZState.One)
+			.addWildcard()
+			.addWildcard()
+			.add(ZState.Three)
+		.build();
+
+		for (int i=0; i < patternCount; ++i) {
+			registrations.add(esm.onSequence(shortPattern, pattern -> shortMatches.incrementAndGet()));
+			registrations.add(esm.onSequence(longPattern, pattern -> longMatches.incrementAndGet()));
+		}
+
+		esm.transition(ZState.Four);
+		esm.transition(ZState.Two);
+		esm.transition(ZState.Three);
+
+		assertEquals(patternCount, shortMatches.get());
+		assertEquals(patternCount, longMatches.get());
+
+		// remove all of the long patterns, leaving the short ones
+		for (int i=1; i < registrations.size(); i += 2) {
+			registrations.get(i).unregister();
+		}
+
+		esm.transition(ZState.One);
+		esm.transition(ZState.Two);
+		esm.transition(ZState.Three);
+
+		assertEquals(2 * patternCount, shortMatches.get());
+		assertEquals(patternCount, longMatches.get());
+	}
+
 	public enum Color implements State {
 		Red, Blue, Green, Orange
 	}
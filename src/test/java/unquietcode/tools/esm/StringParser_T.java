@@ -0,0 +1,194 @@
+package unquietcode.tools.esm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class StringParser_T {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCommaSeparatedEntries() throws ParseException {
+		StringStateMachine sm = new StringStateMachine();
+		StateMachineStringParser.configureStateMachine(String.class, "one : {two, three}, two : {one}, three : {}", sm);
+
+		sm.setInitialState("one");
+		sm.reset();
+
+		assertTrue(sm.transition("two"));
+		assertTrue(sm.transition("one"));
+		assertTrue(sm.transition("three"));
+	}
+
+	@Test
+	public void testInitialState() throws ParseException {
+		StringStateMachine sm = new StringStateMachine();
+		StateMachineStringParser.configureStateMachine(String.class, "two |\n one : {two} | two : {one}", sm);
+
+		assertEquals("two", sm.initialState());
+		assertEquals("two", sm.currentState());
+	}
+
+	@Test
+	public void testNamesWithSpaces() throws ParseException {
+		StringStateMachine sm = new StringStateMachine("new york");
+		StateMachineStringParser.configureStateMachine(String.class, "new york : { los angeles }", sm);
+
+		assertTrue(sm.transition("los angeles"));
+	}
+
+	@Test
+	public void testErrorPosition() {
+		StringStateMachine sm = new StringStateMachine();
+
+		try {
+			StateMachineStringParser.configureStateMachine(String.class, "one : {two} |\n  two : {one, }", sm);
+			fail("expected an exception");
+		} catch (ParseException e) {
+			assertEquals(2, e.getLine());
+			assertEquals(15, e.getColumn());
+		}
+
+		try {
+			StateMachineStringParser.configureStateMachine(String.class, "one {two}", sm);
+			fail("expected an exception");
+		} catch (ParseException e) {
+			assertEquals(1, e.getLine());
+			assertEquals(5, e.getColumn());
+		}
+	}
+
+	@Test
+	public void testRepeatedEntries() throws ParseException {
+		StringStateMachine sm = new StringStateMachine("one");
+		StateMachineStringParser.configureStateMachine(String.class, "one : {two}, two : {one}, one : {three}", sm);
+
+		assertTrue(sm.transition("two"));
+		assertTrue(sm.transition("one"));
+		assertTrue(sm.transition("three"));
+	}
+
+	@Test
+	public void testMalformedLeavesMachineAsItWas() {
+		StringStateMachine sm = new StringStateMachine("one");
+
+		try {
+			StateMachineStringParser.configureStateMachine(String.class, "one : {two}, two : {one", sm);
+			fail("expected an exception");
+		} catch (ParseException e) {
+			// expected
+		}
+
+		// nothing was added before the error was found
+		try {
+			sm.transition("two");
+			fail("expected an exception");
+		} catch (TransitionException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLargeConfiguration() throws ParseException {
+		StringStateMachine sm = new StringStateMachine("state0");
+		StateMachineStringParser.configureStateMachine(String.class, largeConfiguration(), sm);
+		checkLargeConfiguration(sm);
+	}
+
+	@Test
+	public void testReader() throws Exception {
+		StringStateMachine sm = new StringStateMachine("state0");
+		StateMachineStringParser.configureStateMachine(String.class, new StringReader(largeConfiguration().toString()), sm);
+		checkLargeConfiguration(sm);
+	}
+
+	@Test
+	public void testMalformedReaderLeavesMachineAsItWas() throws Exception {
+		StringStateMachine sm = new StringStateMachine("state0");
+		StringBuilder config = largeConfiguration().append("state0 : {");
+
+		try {
+			StateMachineStringParser.configureStateMachine(String.class, new StringReader(config.toString()), sm);
+			fail("expected an exception");
+		} catch (ParseException e) {
+			// expected
+		}
+
+		try {
+			sm.transition("state1");
+			fail("expected an exception");
+		} catch (TransitionException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFile() throws Exception {
+		Path file = folder.newFile("config.txt").toPath();
+		Files.write(file, largeConfiguration().toString().getBytes(StandardCharsets.UTF_8));
+
+		StringStateMachine sm = new StringStateMachine("state0");
+		StateMachineStringParser.configureStateMachine(String.class, file, sm);
+		checkLargeConfiguration(sm);
+	}
+
+	@Test
+	public void testInputStream() throws Exception {
+		byte[] bytes = "caf\u00e9 : {cr\u00e8me}".getBytes(StandardCharsets.UTF_8);
+
+		StringStateMachine sm = new StringStateMachine("caf\u00e9");
+		StateMachineStringParser.configureStateMachine(String.class, new ByteArrayInputStream(bytes), sm);
+		assertTrue(sm.transition("cr\u00e8me"));
+	}
+
+	@Test(expected=IOException.class)
+	public void testMalformedFile() throws Exception {
+		Path file = folder.newFile("bad.txt").toPath();
+		Files.write(file, new byte[] { 'a', ' ', ':', ' ', '{', (byte) 0xC3, '}' });
+
+		StateMachineStringParser.configureStateMachine(String.class, file, new StringStateMachine());
+	}
+
+	private static final int STATES = 5000;
+	private static final int EDGES = 10;
+
+	private static StringBuilder largeConfiguration() {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i=0; i < STATES; ++i) {
+			sb.append("state").append(i).append(" : {");
+
+			for (int j=1; j <= EDGES; ++j) {
+				sb.append("state").append((i + j) % STATES);
+
+				if (j != EDGES) {
+					sb.append(", ");
+				}
+			}
+
+			sb.append("} |\n");
+		}
+
+		return sb;
+	}
+
+	private static void checkLargeConfiguration(StringStateMachine sm) {
+		for (int i=1; i <= STATES; ++i) {
+			assertTrue(sm.transition("state" + (i % STATES)));
+		}
+	}
+}
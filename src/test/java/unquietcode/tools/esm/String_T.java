@@ -2,9 +2,16 @@ package unquietcode.tools.esm;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * @author Ben Fagin
@@ -31,4 +38,136 @@ public class String_T {
 
 		sm.transition("goodbye");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testManyStates() {
+		final int stateCount = 200;
+		StateMachine<String> sm = new StringStateMachine("state0");
+
+		// a ring of states, each of which can move to the next
+		for (int i=0; i < stateCount; ++i) {
+			sm.addTransition("state"+i, "state"+((i+1) % stateCount));
+		}
+
+		for (int i=1; i <= stateCount; ++i) {
+			sm.transition("state"+(i % stateCount));
+		}
+
+		assertEquals("state0", sm.currentState());
+		assertEquals(stateCount, sm.transitionCount());
+
+		// break the ring near the end
+		assertTrue(sm.removeTransitions("state150", "state151"));
+		assertFalse(sm.removeTransitions("state150", "state151"));
+
+		for (int i=1; i <= 150; ++i) {
+			sm.transition("state"+i);
+		}
+
+		try {
+			sm.transition("state151");
+			fail("expected an exception");
+		} catch (TransitionException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCanonicalNames() {
+		final AtomicReference<String> entered = new AtomicReference<String>(null);
+
+		StringStateMachine sm = new StringStateMachine(" Ready");
+		sm.addTransition("READY", "running ");
+		sm.onEntering(state -> entered.set(state));
+
+		assertEquals("ready", sm.getState(" Ready"));
+		assertEquals("running", sm.getState("RUNNING"));
+		assertEquals("unknown", sm.getState(" Unknown "));
+
+		assertTrue(sm.transition("Running"));
+		assertEquals("running", entered.get());
+
+		// the same instance is handed back for known states
+		assertSame(sm.getState("running"), sm.currentState());
+	}
+
+	@Test
+	public void testUnknownStatesAreNotRemembered() {
+		StringStateMachine sm = new StringStateMachine("one");
+		sm.addTransition("one", "two");
+		final String definition = sm.toString();
+
+		for (int i=0; i < 100; ++i) {
+			try {
+				sm.transition("unknown"+i);
+				fail("expected an exception");
+			} catch (TransitionException ex) {
+				// expected
+			}
+		}
+
+		assertEquals(definition, sm.toString());
+		assertTrue(sm.transition("two"));
+	}
+
+	@Test
+	public void testTransitionsFromManyThreads() throws Exception {
+		final int threadCount = 8;
+		final int transitionsPerThread = 250;
+
+		final StringStateMachine sm = new StringStateMachine("ping");
+		sm.addTransitions("ping", "ping", "pong");
+		sm.addTransitions("pong", "ping", "pong");
+
+		ExecutorService threads = Executors.newFixedThreadPool(threadCount);
+		List<Future<?>> results = new ArrayList<>();
+
+		for (int i=0; i < threadCount; ++i) {
+			final String state = i % 2 == 0 ? "Ping" : " PONG";
+
+			results.add(threads.submit(() -> {
+				for (int j=0; j < transitionsPerThread; ++j) {
+					sm.transition(state);
+				}
+			}));
+		}
+
+		for (Future<?> result : results) {
+			result.get(30, TimeUnit.SECONDS);
+		}
+
+		threads.shutdown();
+		assertEquals(threadCount * transitionsPerThread, sm.transitionCount());
+	}
+
+	@Test
+	public void testSequencesOfNames() {
+		StringStateMachine sm = new StringStateMachine("one");
+		sm.addTransitions("one", "two");
+		sm.addTransitions("two", "three");
+		sm.addTransitions("three", "one");
+
+		final List<List<String>> matches = new ArrayList<>();
+
+		sm.onSequence(Arrays.asList("One", " TWO", "three"), pattern -> {
+			try {
+				pattern.add("four");
+				fail("the matched states should be read-only");
+			} catch (UnsupportedOperationException e) {
+				// expected
+			}
+
+			matches.add(new ArrayList<>(pattern));
+		});
+
+		sm.transition("two");
+		sm.transition("three");
+		sm.transition("one");
+		sm.transition("two");
+		sm.transition("three");
+
+		assertEquals(2, matches.size());
+		assertEquals(Arrays.asList("one", "two", "three"), matches.get(0));
+		assertEquals(matches.get(0), matches.get(1));
+	}
+}
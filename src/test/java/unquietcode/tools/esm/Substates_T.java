@@ -0,0 +1,165 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Substates_T {
+
+	/*
+		Off
+		On
+		  Playing
+		    Loud
+		    Quiet
+		  Paused
+	 */
+	private EnumStateMachine<Radio> radio(List<String> log) {
+		EnumStateMachine<Radio> esm = new EnumStateMachine<>(Radio.Off);
+		esm.addSubstates(Radio.On, Arrays.asList(Radio.Playing, Radio.Paused));
+		esm.addSubstates(Radio.Playing, Arrays.asList(Radio.Loud, Radio.Quiet));
+
+		esm.addTransition(Radio.Off, Radio.Quiet);
+		esm.addTransitions(Radio.Loud, Radio.Quiet);
+		esm.addTransitions(Radio.Quiet, Radio.Loud);
+		esm.addTransition(Radio.Playing, Radio.Paused);
+		esm.addTransition(Radio.Paused, Radio.Quiet);
+		esm.addTransition(Radio.Playing, Radio.Playing);
+
+		// inherited by every state within
+		esm.addTransition(Radio.On, Radio.Off, (from, to) -> log.add(from + "->" + to));
+
+		esm.onEntering(state -> log.add("+" + state));
+		esm.onExiting(state -> log.add("-" + state));
+		return esm;
+	}
+
+	@Test
+	public void testEnteringAndExiting() {
+		List<String> log = new ArrayList<>();
+		EnumStateMachine<Radio> esm = radio(log);
+
+		esm.transition(Radio.Quiet);
+		assertEquals(Arrays.asList("-Off", "+On", "+Playing", "+Quiet"), log);
+
+		// siblings only exit and enter themselves
+		log.clear();
+		esm.transition(Radio.Loud);
+		assertEquals(Arrays.asList("-Quiet", "+Loud"), log);
+
+		// a transition from an enclosing state
+		log.clear();
+		esm.transition(Radio.Paused);
+		assertEquals(Arrays.asList("-Loud", "-Playing", "+Paused"), log);
+
+		// inherited all the way from the outermost state
+		log.clear();
+		esm.transition(Radio.Off);
+		assertEquals(Arrays.asList("-Paused", "-On", "Paused->Off", "+Off"), log);
+	}
+
+	@Test
+	public void testTransitionToEnclosingState() {
+		List<String> log = new ArrayList<>();
+		EnumStateMachine<Radio> esm = radio(log);
+		esm.transition(Radio.Quiet);
+
+		// the enclosing state is exited and entered again
+		log.clear();
+		esm.transition(Radio.Playing);
+		assertEquals(Arrays.asList("-Quiet", "-Playing", "+Playing"), log);
+		assertEquals(Radio.Playing, esm.currentState());
+	}
+
+	@Test
+	public void testPathsUseInheritedTransitions() {
+		List<String> log = new ArrayList<>();
+		EnumStateMachine<Radio> esm = radio(log);
+		esm.transition(Radio.Quiet);
+
+		assertTrue(esm.transitionTo(Radio.Off));
+		assertEquals(Radio.Off, esm.currentState());
+	}
+
+	@Test(expected=TransitionException.class)
+	public void testNoInheritanceFromSubstates() {
+		EnumStateMachine<Radio> esm = radio(new ArrayList<>());
+		esm.transition(Radio.Quiet);
+		esm.transition(Radio.Off);
+
+		// Off has no transition to Paused
+		esm.transition(Radio.Paused);
+	}
+
+	@Test
+	public void testTimeoutOfEnclosingState() throws Exception {
+		List<String> log = new ArrayList<>();
+		EnumStateMachine<Radio> esm = radio(log);
+		esm.onTimeout(Radio.On, Duration.ofMillis(100), Radio.Off);
+
+		final CountDownLatch off = new CountDownLatch(1);
+		esm.onEntering(Radio.Off, state -> off.countDown());
+		esm.transition(Radio.Quiet);
+
+		// moving between substates doesn't restart the timeout
+		int moves = 0;
+
+		for (; moves < 500 && off.getCount() > 0; ++moves) {
+			Thread.sleep(10);
+
+			try {
+				esm.transition(moves % 2 == 0 ? Radio.Loud : Radio.Quiet);
+			} catch (TransitionException e) {
+				break;
+			}
+		}
+
+		assertTrue(off.await(5, TimeUnit.SECONDS));
+		assertTrue(moves < 500);
+	}
+
+	@Test
+	public void testLeavingEnclosingStateCancelsTimeout() throws Exception {
+		EnumStateMachine<Radio> esm = radio(new ArrayList<>());
+		esm.onTimeout(Radio.Playing, Duration.ofMillis(50), Radio.Off);
+
+		esm.transition(Radio.Quiet);
+		esm.transition(Radio.Paused);
+
+		Thread.sleep(200);
+		assertEquals(Radio.Paused, esm.currentState());
+	}
+
+	@Test
+	public void testInvalidHierarchy() {
+		EnumStateMachine<Radio> esm = new EnumStateMachine<>(Radio.Off);
+		esm.addSubstates(Radio.On, Arrays.asList(Radio.Playing));
+		assertFalse(esm.addSubstates(Radio.On, Arrays.asList(Radio.Playing)));
+
+		try {
+			esm.addSubstates(Radio.Playing, Arrays.asList(Radio.On));
+			fail("expected an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		try {
+			esm.addSubstates(Radio.Paused, Arrays.asList(Radio.Playing));
+			fail("expected an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	enum Radio { Off, On, Playing, Paused, Loud, Quiet }
+}
@@ -0,0 +1,156 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Timeouts_T {
+
+	@Test
+	public void testTimeoutTransitions() throws Exception {
+		EnumStateMachine<Call> esm = new EnumStateMachine<>(Call.Idle);
+		esm.addTransition(Call.Idle, Call.Ringing);
+		esm.onTimeout(Call.Ringing, Duration.ofMillis(20), Call.Missed);
+
+		final CountDownLatch missed = new CountDownLatch(1);
+		esm.onEntering(Call.Missed, state -> missed.countDown());
+
+		esm.transition(Call.Ringing);
+		assertTrue(missed.await(5, TimeUnit.SECONDS));
+		assertEquals(Call.Missed, esm.currentState());
+	}
+
+	@Test
+	public void testLeavingCancelsTimeout() throws Exception {
+		EnumStateMachine<Call> esm = new EnumStateMachine<>(Call.Idle);
+		esm.addTransition(Call.Idle, Call.Ringing);
+		esm.addTransition(Call.Ringing, Call.Answered);
+		esm.onTimeout(Call.Ringing, Duration.ofMillis(50), Call.Missed);
+
+		final AtomicInteger missed = new AtomicInteger(0);
+		esm.onEntering(Call.Missed, state -> missed.incrementAndGet());
+
+		esm.transition(Call.Ringing);
+		esm.transition(Call.Answered);
+
+		Thread.sleep(200);
+		assertEquals(0, missed.get());
+		assertEquals(Call.Answered, esm.currentState());
+	}
+
+	@Test
+	public void testInitialStateAndUnregister() throws Exception {
+		EnumStateMachine<Call> esm = new EnumStateMachine<>(Call.Ringing);
+		HandlerRegistration registration = esm.onTimeout(Call.Ringing, Duration.ofMillis(50), Call.Missed);
+		registration.unregister();
+
+		Thread.sleep(200);
+		assertEquals(Call.Ringing, esm.currentState());
+
+		final CountDownLatch missed = new CountDownLatch(1);
+		esm.onEntering(Call.Missed, state -> missed.countDown());
+
+		// starts counting right away when already in the state
+		esm.onTimeout(Call.Ringing, Duration.ofMillis(10), Call.Missed);
+		assertTrue(missed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testManyMachines() throws Exception {
+		final int count = 1000;
+		final CountDownLatch missed = new CountDownLatch(count / 2);
+		List<EnumStateMachine<Call>> machines = new ArrayList<>();
+
+		for (int i=0; i < count; ++i) {
+			EnumStateMachine<Call> esm = new EnumStateMachine<>(Call.Idle);
+			esm.addTransition(Call.Idle, Call.Ringing);
+			esm.addTransition(Call.Ringing, Call.Answered);
+			esm.onTimeout(Call.Ringing, Duration.ofMillis(10 + i % 100), Call.Missed);
+			esm.onEntering(Call.Missed, state -> missed.countDown());
+			esm.transitionAsync(Call.Ringing);
+
+			// answer half of the calls
+			if (i % 2 == 0) {
+				esm.transitionAsync(Call.Answered);
+			}
+
+			machines.add(esm);
+		}
+
+		assertTrue(missed.await(30, TimeUnit.SECONDS));
+
+		for (int i=0; i < count; ++i) {
+			assertEquals(i % 2 == 0 ? Call.Answered : Call.Missed, machines.get(i).currentState());
+		}
+	}
+
+	@Test
+	public void testWheelOrdering() throws Exception {
+		TimingWheel wheel = new TimingWheel("test-timer");
+		final List<Integer> fired = new ArrayList<>();
+		final CountDownLatch done = new CountDownLatch(4);
+
+		// spans several levels of the wheel
+		long[] delays = { 300, 5, 80, 5000 };
+
+		for (int i=0; i < delays.length; ++i) {
+			final int id = i;
+
+			wheel.schedule(TimeUnit.MILLISECONDS.toNanos(delays[i]), () -> {
+				fired.add(id);
+				done.countDown();
+			});
+		}
+
+		TimingWheel.Timeout cancelled = wheel.schedule(TimeUnit.MILLISECONDS.toNanos(100), () -> fired.add(-1));
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		// only the ticker thread adds to the list
+		assertEquals(Arrays.asList(1, 2, 0, 3), fired);
+	}
+
+	@Test
+	public void testExistingTransitionDoesNotReset() throws Exception {
+		EnumStateMachine<Call> esm = new EnumStateMachine<>(Call.Idle);
+		esm.addTransition(Call.Idle, Call.Ringing);
+		esm.addTransition(Call.Ringing, Call.Missed);
+
+		final CountDownLatch missed = new CountDownLatch(1);
+		esm.onEntering(Call.Missed, state -> missed.countDown());
+
+		esm.transition(Call.Ringing);
+		esm.onTimeout(Call.Ringing, Duration.ofMillis(20), Call.Missed);
+
+		// still ringing, and the timeout started counting when registered
+		assertEquals(Call.Ringing, esm.currentState());
+		assertTrue(missed.await(5, TimeUnit.SECONDS));
+		assertEquals(2, esm.transitionCount());
+	}
+
+	@Test
+	public void testNewTransitionResets() {
+		EnumStateMachine<Call> esm = new EnumStateMachine<>(Call.Idle);
+		esm.addTransition(Call.Idle, Call.Ringing);
+		esm.transition(Call.Ringing);
+
+		esm.onTimeout(Call.Ringing, Duration.ofMinutes(1), Call.Missed);
+		assertEquals(Call.Idle, esm.currentState());
+		assertEquals(0, esm.transitionCount());
+	}
+
+	enum Call { Idle, Ringing, Answered, Missed }
+}
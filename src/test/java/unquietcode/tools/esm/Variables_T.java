@@ -0,0 +1,109 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+import unquietcode.tools.esm.StateVariables.IntVariable;
+import unquietcode.tools.esm.StateVariables.LongVariable;
+import unquietcode.tools.esm.StateVariables.Variable;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version 10-18-2026
+ */
+public class Variables_T {
+
+	@Test
+	public void testHandlersAndRouters() {
+		EnumStateMachine<Job> esm = new EnumStateMachine<>(Job.Idle);
+		esm.addAll(Job.class, true);
+
+		final IntVariable attempts = esm.variables().intVariable("attempts", 0);
+		final LongVariable started = esm.variables().longVariable("started", -1);
+		final Variable<String> error = esm.variables().variable("error", null);
+
+		esm.onEntering(Job.Running, state -> {
+			attempts.add(1);
+			started.set(42);
+		});
+
+		esm.onEntering(Job.Failed, state -> error.set("timeout"));
+
+		// give up after three attempts
+		esm.routeBeforeEntering(Job.Running, (current, next) -> attempts.get() >= 3 ? Job.Done : null);
+
+		for (int i=0; i < 4; ++i) {
+			esm.transition(Job.Running);
+			esm.transition(Job.Failed);
+		}
+
+		assertEquals(3, attempts.get());
+		assertEquals(42, started.get());
+		assertEquals("timeout", error.get());
+		assertEquals("attempts=3", attempts.toString());
+
+		// a reset restores the initial values
+		esm.reset();
+		assertEquals(0, attempts.get());
+		assertEquals(-1, started.get());
+		assertNull(error.get());
+	}
+
+	@Test
+	public void testRedeclaring() {
+		StringStateMachine sm = new StringStateMachine("a");
+		StateVariables variables = sm.variables();
+
+		LongVariable count = variables.longVariable("count", 0);
+		count.set(5);
+
+		assertSame(count, variables.longVariable("count", 10));
+		assertEquals(5, count.get());
+
+		try {
+			variables.intVariable("count", 0);
+			fail("expected an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSeparateInstances() {
+		StringStateMachine sm1 = new StringStateMachine("a");
+		StringStateMachine sm2 = new StringStateMachine("a");
+
+		sm1.variables().intVariable("x", 1).set(7);
+		assertEquals(1, sm2.variables().intVariable("x", 1).get());
+		assertEquals(7, sm1.variables().intVariable("x", 1).get());
+	}
+
+	@Test
+	public void testDeclaringWhileWriting() throws Exception {
+		StringStateMachine sm = new StringStateMachine("a");
+		final LongVariable count = sm.variables().longVariable("count", 0);
+		final int writes = 200_000;
+
+		Thread writer = new Thread(() -> {
+			for (int i=0; i < writes; ++i) {
+				count.add(1);
+			}
+		});
+
+		writer.start();
+
+		// none of the writes are lost while the slots grow
+		for (int i=0; i < 1000; ++i) {
+			sm.variables().longVariable("other"+i, i);
+		}
+
+		writer.join();
+		assertEquals(writes, count.get());
+		assertEquals(999, sm.variables().longVariable("other999", 0).get());
+
+		sm.reset();
+		assertEquals(0, count.get());
+		assertEquals(999, sm.variables().longVariable("other999", 0).get());
+	}
+
+	enum Job { Idle, Running, Failed, Done }
+}
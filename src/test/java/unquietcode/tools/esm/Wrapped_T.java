@@ -0,0 +1,154 @@
+package unquietcode.tools.esm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises the wrapper cache, through a state machine
+ * whose wrappers are not canonical.
+ *
+ * @version 10-18-2026
+ */
+public class Wrapped_T {
+
+	@Test
+	public void testDefinedStatesKeepTheirWrappers() throws Exception {
+		final BoxMachine sm = new BoxMachine(0);
+		sm.addAllTransitions(Arrays.asList(0, 1, 2), true);
+		int defined = sm.wraps;
+
+		final int threads = 4;
+		final CountDownLatch done = new CountDownLatch(threads);
+		final List<Throwable> errors = new ArrayList<>();
+
+		for (int t=0; t < threads; ++t) {
+			new Thread(() -> {
+				try {
+					for (int i=0; i < 200; ++i) {
+						sm.transition(i % 3);
+					}
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				} finally {
+					done.countDown();
+				}
+			}).start();
+		}
+
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		// no new wrappers for the states which were already known
+		assertEquals(defined, sm.wraps);
+		assertEquals(800, sm.transitionCount());
+	}
+
+	@Test
+	public void testUnknownValuesAreCached() {
+		BoxMachine sm = new BoxMachine(0);
+		sm.addTransitions(0, 1);
+		int defined = sm.wraps;
+
+		for (int i=0; i < 5; ++i) {
+			attempt(sm, 100);
+		}
+
+		assertEquals(defined + 1, sm.wraps);
+	}
+
+	@Test
+	public void testCacheLimit() {
+		BoxMachine sm = new BoxMachine(0);
+		sm.addTransitions(0, 1);
+		sm.setWrapperCacheLimit(2);
+		int defined = sm.wraps;
+
+		attempt(sm, 100);
+		attempt(sm, 101);
+		attempt(sm, 100);
+		attempt(sm, 101);
+		assertEquals(defined + 2, sm.wraps);
+
+		// one of the two is evicted to make room
+		attempt(sm, 102);
+		assertEquals(defined + 3, sm.wraps);
+		attempt(sm, 100);
+		attempt(sm, 101);
+		assertTrue(sm.wraps >= defined + 4 && sm.wraps <= defined + 5);
+
+		// the defined states are never evicted
+		int before = sm.wraps;
+		sm.transition(1);
+		assertEquals(before, sm.wraps);
+	}
+
+	@Test
+	public void testCachingDisabled() {
+		BoxMachine sm = new BoxMachine(0);
+		sm.addTransitions(0, 1);
+		attempt(sm, 100);
+		attempt(sm, 101);
+
+		// shrinking drops what was cached
+		sm.setWrapperCacheLimit(0);
+		int before = sm.wraps;
+
+		attempt(sm, 100);
+		attempt(sm, 100);
+		assertEquals(before + 2, sm.wraps);
+	}
+
+	private static void attempt(BoxMachine sm, int value) {
+		try {
+			sm.transition(value);
+			fail("expected an exception");
+		} catch (TransitionException e) {
+			// unknown states cannot be entered
+		}
+	}
+
+	static class BoxMachine extends WrappedStateMachine<Box, Integer> {
+		// no initializer, since the parent constructor wraps the initial state
+		int wraps;
+
+		BoxMachine(Integer initial) {
+			super(initial);
+		}
+
+		@Override
+		protected Integer unwrap(Box wrapped) {
+			return wrapped.value;
+		}
+
+		@Override
+		protected Box wrap(Integer unwrapped) {
+			synchronized (this) {
+				wraps += 1;
+			}
+
+			return new Box(unwrapped);
+		}
+	}
+
+	static class Box implements State {
+		final int value;
+
+		Box(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public String name() {
+			return String.valueOf(value);
+		}
+	}
+}